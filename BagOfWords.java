@@ -16,44 +16,188 @@
  * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
  */
 
-import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * this class is used to train or to evaluate on a Naive Bayes Classifier
  * @author vitorcezar
  */
-public class BagOfWords implements Serializable {
+public class BagOfWords {
    
     /**
-     * mapping for the words the their informations
+     * mapping for the words to their ids
      */
-    private final HashMap< String, WordInformation > wordsMap;
+    private TermIndex terms;
+    
+    /**
+     * counts how many times each word occurred on a positive document,
+     * indexed by the word's id
+     */
+    private CountArray positiveCounts;
+    
+    /**
+     * counts how many times each word occurred on a negative document,
+     * indexed by the word's id
+     */
+    private CountArray negativeCounts;
     
     /**
      * number of words on a positive vocabulary
      */
-    private int positiveVocabulary;
+    private long positiveVocabulary;
     
     /**
      * the number of words on a negative vocabulary
      */
-    private int negativeVocabulary;
+    private long negativeVocabulary;
+    
+    /**
+     * how many times the words that aren't on a pruned bag occurred on a
+     * positive document, or null if the bag isn't pruned
+     */
+    private CountMinSketch positiveSketch;
+    
+    /**
+     * how many times the words that aren't on a pruned bag occurred on a
+     * negative document, or null if the bag isn't pruned
+     */
+    private CountMinSketch negativeSketch;
+    
+    /**
+     * number of occurrences a word needs to enter a pruned bag
+     */
+    private int threshold;
+    
+    /**
+     * maximum number of words on a pruned bag
+     */
+    private int maxWords;
+    
+    /**
+     * number of counters on each row of the sketches for each word a pruned
+     * bag can keep
+     */
+    private static final int SKETCH_WIDTH_PER_WORD = 2;
     
     /**
      * this value won't make a difference on naive bayes execution
      */
     private static final int DEFAULT_VALUE = 1;
     
+    /**
+     * initial length of the count arrays
+     */
+    private static final int INITIAL_CAPACITY = 512;
+    
     /**
      * the vocabularies must be zero initially
      */
     public BagOfWords() {
-        wordsMap = new HashMap<>();
+        this( INITIAL_CAPACITY );
+    }
+    
+    /**
+     * creates an empty bag that can take a number of words without growing
+     * @param expectedWords the number of words expected
+     */
+    public BagOfWords( int expectedWords ) {
+        this( new TermDictionary( expectedWords ), expectedWords );
+    }
+    
+    /**
+     * creates an empty bag
+     * @param terms mapping for the words to their ids
+     * @param capacity initial length of the count arrays
+     */
+    private BagOfWords( TermIndex terms, int capacity ) {
+        this( terms, capacity, null );
+    }
+    
+    /**
+     * creates an empty bag whose counts may be kept off the heap
+     * @param terms mapping for the words to their ids
+     * @param capacity initial length of the count arrays
+     * @param memory the arena of the counts, or null to keep them on the
+     * heap
+     */
+    private BagOfWords( TermIndex terms, int capacity, OffHeapMemory memory ) {
+        this.terms = terms;
+        positiveCounts = new CountArray( Math.max( capacity, 1 ), memory );
+        negativeCounts = new CountArray( Math.max( capacity, 1 ), memory );
         negativeVocabulary = 0;
         positiveVocabulary = 0;
     }
     
+    /**
+     * creates an empty bag that maps the words into a fixed number of
+     * buckets by their hashes, instead of keeping them. Its memory doesn't
+     * grow with the vocabulary, but words that share a bucket share their
+     * counts
+     * @param buckets number of buckets
+     * @return the bag
+     */
+    public static BagOfWords hashed( int buckets ) {
+        return new BagOfWords( new HashedTerms( buckets ), buckets );
+    }
+    
+    /**
+     * creates an empty bag whose words and counts are kept on an off-heap
+     * arena instead of the heap, so a vocabulary of tens of millions of
+     * words neither needs a large heap nor slows the collector down. The
+     * bag can't be used once the arena is closed
+     * @param memory the arena where the words and counts are kept
+     * @return the bag
+     */
+    public static BagOfWords offHeap( OffHeapMemory memory ) {
+        return new BagOfWords( new OffHeapTerms( memory ), INITIAL_CAPACITY,
+            memory );
+    }
+    
+    /**
+     * creates an empty bag that only keeps the words that occurred a number
+     * of times. The words that aren't on the bag are counted on a sketch of
+     * fixed size, and a word enters the bag with the counts estimated by
+     * the sketch once it reaches the threshold. When the bag is full, its
+     * least frequent half is evicted back to the sketch, whose counts are
+     * halved at the same time so old words fade away. The memory is bounded
+     * and the frequent words keep exact counts
+     * @param threshold number of occurrences a word needs to enter the bag
+     * @param maxWords maximum number of words on the bag
+     * @return the bag
+     */
+    public static BagOfWords pruned( int threshold, int maxWords ) {
+        if( threshold < 1 || maxWords < 2 ) {
+            throw new IllegalArgumentException( "the threshold must be positive and the bag must take two words at least" );
+        }
+        BagOfWords bagOfWords = new BagOfWords( new TermDictionary( maxWords ),
+            maxWords );
+        bagOfWords.positiveSketch = new CountMinSketch( maxWords *
+            SKETCH_WIDTH_PER_WORD );
+        bagOfWords.negativeSketch = new CountMinSketch( maxWords *
+            SKETCH_WIDTH_PER_WORD );
+        bagOfWords.threshold = threshold;
+        bagOfWords.maxWords = maxWords;
+        return bagOfWords;
+    }
+    
+    /**
+     * indicates if the words are kept, which isn't the case of the hashed
+     * bags
+     * @return true if word returns the words
+     */
+    public boolean keepsWords() {
+        return terms.keepsTerms();
+    }
+    
+    /**
+     * indicates if the bag is pruned, so its words may be evicted and the
+     * ids of the remaining ones change
+     * @return true if the bag has sketches
+     */
+    boolean isPruned() {
+        return positiveSketch != null;
+    }
+    
     /**
      * indicates that a word is present on a positive document
      * @param word word that is being evaluated
@@ -72,15 +216,41 @@ public class BagOfWords implements Serializable {
         addPosOrNeg( word, false );
     }
     
+    /**
+     * indicates that a token is present on a positive document
+     * @param tokenizer the tokenizer that has the word
+     * @param token the word's index on the tokenizer
+     */
+    public void setPositive( Tokenizer tokenizer, int token ) {
+        positiveVocabulary++;
+        int id = add( tokenizer, token, true );
+        if( id != TermDictionary.NOT_FOUND ) {
+            positiveCounts.add( id, 1 );
+        }
+    }
+    
+    /**
+     * indicates that a token is present on a negative document
+     * @param tokenizer the tokenizer that has the word
+     * @param token the word's index on the tokenizer
+     */
+    public void setNegative( Tokenizer tokenizer, int token ) {
+        negativeVocabulary++;
+        int id = add( tokenizer, token, false );
+        if( id != TermDictionary.NOT_FOUND ) {
+            negativeCounts.add( id, 1 );
+        }
+    }
+    
     /**
      * returns the probability that the word will occur on a negative document
      * @param word word that is being evaluated
      * @return the probability that the word will occur on a negative document
      */
     public double probabilityAsNegative( String word ) {
-        if( wordsMap.containsKey( word ) ) {
-            WordInformation wordInformation = wordsMap.get( word );
-            return ( double ) ( 1 + wordInformation.getNegativeAmount() ) /
+        int id = terms.find( word );
+        if( id != TermDictionary.NOT_FOUND ) {
+            return ( double ) ( 1 + negativeCounts.get( id ) ) /
                 ( ( double ) ( 2 * negativeVocabulary + positiveVocabulary ) );
         } 
         return DEFAULT_VALUE;
@@ -92,14 +262,394 @@ public class BagOfWords implements Serializable {
      * @return the probability that the word will occur on a positive document
      */
     public double probabilityAsPositive( String word ) {
-        if( wordsMap.containsKey( word ) ) {
-            WordInformation wordInformation = wordsMap.get( word );
-            return ( double ) ( 1 + wordInformation.getPositiveAmount() ) /
+        int id = terms.find( word );
+        if( id != TermDictionary.NOT_FOUND ) {
+            return ( double ) ( 1 + positiveCounts.get( id ) ) /
                 ( ( double ) ( 2 * positiveVocabulary + negativeVocabulary ) );
         }
         return DEFAULT_VALUE;
     }
     
+    /**
+     * adds to the number of times a word occurred on positive and negative
+     * documents, without changing the vocabularies
+     * @param word word whose information will be modified
+     * @param positive occurrences on positive documents
+     * @param negative occurrences on negative documents
+     */
+    public void addCounts( String word, int positive, int negative ) {
+        int id = terms.add( word );
+        ensureCapacity( id );
+        positiveCounts.add( id, positive );
+        negativeCounts.add( id, negative );
+    }
+    
+    /**
+     * adds to the counts of an id, without changing the vocabularies. It's
+     * how the buckets of a hashed bag are filled
+     * @param id the word's id
+     * @param positive occurrences on positive documents
+     * @param negative occurrences on negative documents
+     */
+    public void addCounts( int id, int positive, int negative ) {
+        ensureCapacity( id );
+        positiveCounts.add( id, positive );
+        negativeCounts.add( id, negative );
+    }
+    
+    /**
+     * adds to the number of words on the positive and negative vocabularies
+     * @param positive words on positive documents
+     * @param negative words on negative documents
+     */
+    public void addVocabularies( long positive, long negative ) {
+        positiveVocabulary += positive;
+        negativeVocabulary += negative;
+    }
+    
+    /**
+     * adds the words and vocabularies of another bag to this one, as if its
+     * documents had been given to this bag. When both bags are pruned, their
+     * sketches are merged as well, and a word kept by a single bag gets the
+     * estimates of the other's sketch, so the result doesn't depend on how
+     * the documents were split. A bag that isn't pruned has no sketch, so
+     * only the words kept by a pruned bag are added to it
+     * @param other the bag that will be added, it must keep its words if
+     * this one does, or have the same buckets otherwise, and have sketches
+     * of the same width if both are pruned
+     */
+    public void merge( BagOfWords other ) {
+        if( keepsWords() != other.keepsWords() || ( !keepsWords() &&
+            terms.size() != other.terms.size() ) ) {
+            throw new IllegalArgumentException( "the bags map the words differently" );
+        }
+        boolean sketches = positiveSketch != null &&
+            other.positiveSketch != null;
+        if( sketches ) {
+            // the words kept only by this bag take the other's estimates
+            for( int id = 0; id < terms.size(); id++ ) {
+                String word = terms.term( id );
+                if( other.terms.find( word ) == TermDictionary.NOT_FOUND ) {
+                    int hash = TermDictionary.hash( word );
+                    positiveCounts.add( id,
+                        other.positiveSketch.estimate( hash ) );
+                    negativeCounts.add( id,
+                        other.negativeSketch.estimate( hash ) );
+                }
+            }
+        }
+        for( int otherId = 0; otherId < other.terms.size(); otherId++ ) {
+            int id;
+            if( !keepsWords() ) {
+                id = otherId;
+            } else if( !sketches ) {
+                id = terms.add( other.terms.term( otherId ) );
+            } else {
+                // the words kept only by the other bag take this one's
+                // estimates
+                String word = other.terms.term( otherId );
+                id = terms.find( word );
+                if( id == TermDictionary.NOT_FOUND ) {
+                    id = terms.add( word );
+                    ensureCapacity( id );
+                    int hash = TermDictionary.hash( word );
+                    positiveCounts.set( id, positiveSketch.estimate( hash ) );
+                    negativeCounts.set( id, negativeSketch.estimate( hash ) );
+                }
+            }
+            ensureCapacity( id );
+            positiveCounts.add( id, other.positiveCounts.get( otherId ) );
+            negativeCounts.add( id, other.negativeCounts.get( otherId ) );
+        }
+        if( sketches ) {
+            positiveSketch.merge( other.positiveSketch );
+            negativeSketch.merge( other.negativeSketch );
+        }
+        positiveVocabulary += other.positiveVocabulary;
+        negativeVocabulary += other.negativeVocabulary;
+        while( positiveSketch != null && terms.size() > maxWords ) {
+            evict();
+        }
+    }
+    
+    /**
+     * removes the words and vocabularies of another bag from this one, as if
+     * its documents had never been given to this bag. The words left without
+     * occurrences get the log-ratio of the unknown words, so the result has
+     * the same log-ratios as a bag trained without the other's documents
+     * @param other the bag that will be removed, its documents must have
+     * been added to this bag
+     */
+    public void subtract( BagOfWords other ) {
+        if( positiveSketch != null || other.positiveSketch != null ) {
+            throw new IllegalArgumentException( "pruned bags can't be subtracted" );
+        }
+        if( keepsWords() != other.keepsWords() || ( !keepsWords() &&
+            terms.size() != other.terms.size() ) ) {
+            throw new IllegalArgumentException( "the bags map the words differently" );
+        }
+        for( int otherId = 0; otherId < other.terms.size(); otherId++ ) {
+            int id = keepsWords() ? terms.find( other.terms.term( otherId ) ) :
+                otherId;
+            if( id == TermDictionary.NOT_FOUND ||
+                positiveCounts.get( id ) <
+                other.positiveCounts.get( otherId ) ||
+                negativeCounts.get( id ) <
+                other.negativeCounts.get( otherId ) ) {
+                throw new IllegalArgumentException( "the bag wasn't added to this one" );
+            }
+            positiveCounts.add( id, -other.positiveCounts.get( otherId ) );
+            negativeCounts.add( id, -other.negativeCounts.get( otherId ) );
+        }
+        positiveVocabulary -= other.positiveVocabulary;
+        negativeVocabulary -= other.negativeVocabulary;
+    }
+    
+    /**
+     * returns the id of a word, so its information can be read without
+     * searching the word again
+     * @param word word that is being searched
+     * @return the word's id or TermDictionary.NOT_FOUND if it's unknown, a
+     * hashed bag returns the word's bucket
+     */
+    public int indexOf( String word ) {
+        return terms.find( word );
+    }
+    
+    /**
+     * returns the id of a token without creating a string
+     * @param tokenizer the tokenizer that has the word
+     * @param token the word's index on the tokenizer
+     * @return the word's id or TermDictionary.NOT_FOUND if it's unknown
+     */
+    public int indexOf( Tokenizer tokenizer, int token ) {
+        return terms.find( tokenizer.text(), tokenizer.start( token ),
+            tokenizer.length( token ), tokenizer.hash( token ) );
+    }
+    
+    /**
+     * returns the logarithm of the ratio between the probability that the
+     * word will occur on a positive document and the probability that it
+     * will occur on a negative document. A word that never occurred has the
+     * same probabilities as an unknown one, so its log-ratio is zero
+     * @param id the word's id
+     * @return the log-ratio of the word's positive and negative probabilities
+     */
+    public double logRatio( int id ) {
+        return logRatio( positiveCounts.get( id ), negativeCounts.get( id ),
+            positiveVocabulary, negativeVocabulary );
+    }
+    
+    /**
+     * returns the log-ratio of a word with the given counts
+     * @param positiveCount occurrences of the word on positive documents
+     * @param negativeCount occurrences of the word on negative documents
+     * @param positiveVocabulary number of words on the positive vocabulary
+     * @param negativeVocabulary number of words on the negative vocabulary
+     * @return the log-ratio of the word's positive and negative probabilities
+     */
+    private static double logRatio( long positiveCount, long negativeCount,
+        long positiveVocabulary, long negativeVocabulary ) {
+        if( positiveCount == 0 && negativeCount == 0 ) {
+            return 0;
+        }
+        double positive = ( double ) ( 1 + positiveCount ) *
+            ( double ) ( 2 * negativeVocabulary + positiveVocabulary );
+        double negative = ( double ) ( 1 + negativeCount ) *
+            ( double ) ( 2 * positiveVocabulary + negativeVocabulary );
+        return Math.log( positive / negative );
+    }
+    
+    /**
+     * returns an immutable model with the log-ratio of every word of the bag
+     * @param priorLogOdds the log-ratio of the positive and negative priors
+     * @return the model of the bag
+     */
+    public FrozenModel freeze( double priorLogOdds ) {
+        double[] logRatios = new double[ terms.size() ];
+        for( int id = 0; id < terms.size(); id++ ) {
+            logRatios[ id ] = logRatio( id );
+        }
+        return new FrozenModel( frozenTerms( 0, terms.size() ), logRatios,
+            priorLogOdds );
+    }
+    
+    /**
+     * returns an immutable copy of the words of a range of ids, where the
+     * word of the id first has the id zero. The buckets of a hashed bag
+     * don't change, so they are shared instead
+     * @param first the first id of the range
+     * @param end the id after the last one of the range
+     * @return the words of the range
+     */
+    TermIndex frozenTerms( int first, int end ) {
+        if( !keepsWords() ) {
+            return terms;
+        }
+        TermDictionary frozenTerms = new TermDictionary( end - first );
+        for( int id = first; id < end; id++ ) {
+            frozenTerms.add( terms.term( id ) );
+        }
+        return frozenTerms;
+    }
+    
+    /**
+     * returns the ids on this bag of the words that occurred on another one,
+     * which must have been merged into this bag
+     * @param other the bag whose words are searched
+     * @return the ids of the words that occurred on the other bag
+     */
+    int[] idsOf( BagOfWords other ) {
+        int[] ids = new int[ other.terms.size() ];
+        int count = 0;
+        for( int otherId = 0; otherId < ids.length; otherId++ ) {
+            if( other.positiveCounts.get( otherId ) != 0 ||
+                other.negativeCounts.get( otherId ) != 0 ) {
+                ids[ count++ ] = keepsWords() ?
+                    terms.find( other.terms.term( otherId ) ) : otherId;
+            }
+        }
+        return Arrays.copyOf( ids, count );
+    }
+    
+    /**
+     * returns the part of a word's log-ratio that only depends on its own
+     * counts. The log-ratio is this part plus the vocabulary part, which is
+     * the same for every word, so a snapshot of the log-ratios only has to
+     * change the words that were trained
+     * @param id the word's id
+     * @return the word's part of the log-ratio, or NaN if the word never
+     * occurred, as its log-ratio is zero then
+     */
+    double wordPart( int id ) {
+        if( positiveCounts.get( id ) == 0 && negativeCounts.get( id ) == 0 ) {
+            return Double.NaN;
+        }
+        return Math.log( ( 1.0 + positiveCounts.get( id ) ) /
+            ( 1.0 + negativeCounts.get( id ) ) );
+    }
+    
+    /**
+     * returns the part of the log-ratios that depends on the vocabularies,
+     * which is the same for every word that occurred
+     * @return the vocabulary part of the log-ratios
+     */
+    double vocabularyPart() {
+        return Math.log( ( double ) ( 2 * negativeVocabulary +
+            positiveVocabulary ) / ( double ) ( 2 * positiveVocabulary +
+            negativeVocabulary ) );
+    }
+    
+    /**
+     * returns an immutable model with the log-ratios this bag would have
+     * with the words and vocabularies of another bag subtracted, without
+     * subtracting them from a copy. The model shares the words of this bag,
+     * which mustn't change while it's used
+     * @param other the bag whose documents are left out, it must have been
+     * added to this bag and neither can be pruned
+     * @param priorLogOdds the log-ratio of the positive and negative priors
+     * without the other's documents
+     * @return the model of the bag without the other's documents
+     */
+    public FrozenModel freezeWithout( BagOfWords other, double priorLogOdds ) {
+        if( positiveSketch != null || other.positiveSketch != null ) {
+            throw new IllegalArgumentException( "pruned bags can't be subtracted" );
+        }
+        if( keepsWords() != other.keepsWords() || ( !keepsWords() &&
+            terms.size() != other.terms.size() ) ) {
+            throw new IllegalArgumentException( "the bags map the words differently" );
+        }
+        long positiveLeft = positiveVocabulary - other.positiveVocabulary;
+        long negativeLeft = negativeVocabulary - other.negativeVocabulary;
+        double[] logRatios = new double[ terms.size() ];
+        for( int id = 0; id < terms.size(); id++ ) {
+            logRatios[ id ] = logRatio( positiveCounts.get( id ),
+                negativeCounts.get( id ), positiveLeft, negativeLeft );
+        }
+        for( int otherId = 0; otherId < other.terms.size(); otherId++ ) {
+            int id = keepsWords() ? terms.find( other.terms.term( otherId ) ) :
+                otherId;
+            if( id == TermDictionary.NOT_FOUND ||
+                positiveCounts.get( id ) <
+                other.positiveCounts.get( otherId ) ||
+                negativeCounts.get( id ) <
+                other.negativeCounts.get( otherId ) ) {
+                throw new IllegalArgumentException( "the bag wasn't added to this one" );
+            }
+            logRatios[ id ] = logRatio( positiveCounts.get( id ) -
+                other.positiveCounts.get( otherId ), negativeCounts.get( id ) -
+                other.negativeCounts.get( otherId ), positiveLeft,
+                negativeLeft );
+        }
+        return new FrozenModel( terms, logRatios, priorLogOdds );
+    }
+    
+    /**
+     * returns the number of different words on the bag, or the number of
+     * buckets if it's hashed
+     * @return the number of ids on the bag
+     */
+    public int size() {
+        return terms.size();
+    }
+    
+    /**
+     * returns an estimate of the bytes taken by the bag, including the
+     * sketches of the words that weren't kept yet
+     * @return the bytes taken by the bag
+     */
+    public long estimatedBytes() {
+        long bytes = positiveCounts.bytes() + negativeCounts.bytes() +
+            terms.estimatedBytes();
+        if( positiveSketch != null ) {
+            bytes += positiveSketch.bytes() + negativeSketch.bytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * returns the word that has the id
+     * @param id the word's id
+     * @return the word that has the id, or null if the bag is hashed
+     */
+    public String word( int id ) {
+        return terms.term( id );
+    }
+    
+    /**
+     * returns how many times a word occurred on a positive document
+     * @param id the word's id
+     * @return how many times the word occurred on a positive document
+     */
+    public int positiveCount( int id ) {
+        return positiveCounts.get( id );
+    }
+    
+    /**
+     * returns how many times a word occurred on a negative document
+     * @param id the word's id
+     * @return how many times the word occurred on a negative document
+     */
+    public int negativeCount( int id ) {
+        return negativeCounts.get( id );
+    }
+    
+    /**
+     * returns the number of words on the positive vocabulary
+     * @return the number of words on the positive vocabulary
+     */
+    public long positiveVocabulary() {
+        return positiveVocabulary;
+    }
+    
+    /**
+     * returns the number of words on the negative vocabulary
+     * @return the number of words on the negative vocabulary
+     */
+    public long negativeVocabulary() {
+        return negativeVocabulary;
+    }
+    
     /**
      * increment the number of times a word appeared on a positive or negative
      * document
@@ -107,21 +657,152 @@ public class BagOfWords implements Serializable {
      * @param positive indicates if the document is a positive one
      */
     private void addPosOrNeg( String word, boolean positive ) {
-        if( wordsMap.containsKey( word ) ) {
-            WordInformation wordInformation = wordsMap.get( word );
-            if( positive ) {
-                wordInformation.addPositive();
-            } else {
-                wordInformation.addNegative();
+        int id;
+        if( positiveSketch == null ) {
+            id = terms.add( word );
+        } else {
+            id = terms.find( word );
+            if( id == TermDictionary.NOT_FOUND ) {
+                int hash = TermDictionary.hash( word );
+                if( !admit( hash, positive ) ) {
+                    return;
+                }
+                id = terms.add( word );
+                initializeCounts( id, hash, positive );
             }
+        }
+        ensureCapacity( id );
+        if( positive ) {
+            positiveCounts.add( id, 1 );
+        } else {
+            negativeCounts.add( id, 1 );
+        }
+    }
+    
+    /**
+     * returns the id of a token, adding it to the bag if it's new
+     * @param tokenizer the tokenizer that has the word
+     * @param token the word's index on the tokenizer
+     * @param positive indicates if the document is a positive one
+     * @return the word's id, or TermDictionary.NOT_FOUND if the bag is
+     * pruned and the word didn't reach the threshold
+     */
+    private int add( Tokenizer tokenizer, int token, boolean positive ) {
+        char[] chars = tokenizer.text();
+        int start = tokenizer.start( token );
+        int length = tokenizer.length( token );
+        int hash = tokenizer.hash( token );
+        int id;
+        if( positiveSketch == null ) {
+            id = terms.add( chars, start, length, hash );
         } else {
-            WordInformation wordInformation = new WordInformation();
-            if( positive ) {
-                wordInformation.addPositive();
+            id = terms.find( chars, start, length, hash );
+            if( id == TermDictionary.NOT_FOUND ) {
+                if( !admit( hash, positive ) ) {
+                    return TermDictionary.NOT_FOUND;
+                }
+                id = terms.add( chars, start, length, hash );
+                initializeCounts( id, hash, positive );
+            }
+        }
+        ensureCapacity( id );
+        return id;
+    }
+    
+    /**
+     * counts an occurrence of a word that isn't on a pruned bag, making
+     * room for it if it reaches the threshold
+     * @param hash the word's hash
+     * @param positive indicates if the document is a positive one
+     * @return true if the word must enter the bag
+     */
+    private boolean admit( int hash, boolean positive ) {
+        if( positive ) {
+            positiveSketch.add( hash, 1 );
+        } else {
+            negativeSketch.add( hash, 1 );
+        }
+        long estimate = ( long ) positiveSketch.estimate( hash ) +
+            negativeSketch.estimate( hash );
+        if( estimate < threshold ) {
+            return false;
+        }
+        if( terms.size() >= maxWords ) {
+            evict();
+        }
+        return true;
+    }
+    
+    /**
+     * sets the counts of a word that entered a pruned bag to the estimates
+     * of the sketches, except for the occurrence that is being added
+     * @param id the word's id
+     * @param hash the word's hash
+     * @param positive indicates if the document is a positive one
+     */
+    private void initializeCounts( int id, int hash, boolean positive ) {
+        ensureCapacity( id );
+        positiveCounts.set( id, positiveSketch.estimate( hash ) -
+            ( positive ? 1 : 0 ) );
+        negativeCounts.set( id, negativeSketch.estimate( hash ) -
+            ( positive ? 0 : 1 ) );
+    }
+    
+    /**
+     * evicts the least frequent half of the words of a pruned bag to the
+     * sketches, rebuilding the bag with the words that are kept. The
+     * sketches are halved before, so the counts of the evicted words fade
+     * away as the counts of the words that were already there
+     */
+    private void evict() {
+        int size = terms.size();
+        long[] totals = new long[ size ];
+        for( int id = 0; id < size; id++ ) {
+            totals[ id ] = ( long ) positiveCounts.get( id ) +
+                negativeCounts.get( id );
+        }
+        long[] sorted = totals.clone();
+        Arrays.sort( sorted );
+        int kept = size / 2;
+        long cutoff = sorted[ size - kept ];
+
+        // the words above the cutoff are kept, and so are the first ones on
+        // the cutoff until half of the words are kept
+        int tied = 0;
+        for( int i = size - kept; i < size && sorted[ i ] == cutoff; i++ ) {
+            tied++;
+        }
+        positiveSketch.halve();
+        negativeSketch.halve();
+        TermDictionary keptTerms = new TermDictionary( maxWords );
+        CountArray keptPositive = new CountArray( Math.max( maxWords, 1 ) );
+        CountArray keptNegative = new CountArray( Math.max( maxWords, 1 ) );
+        for( int id = 0; id < size; id++ ) {
+            if( totals[ id ] > cutoff || ( totals[ id ] == cutoff &&
+                tied-- > 0 ) ) {
+                int keptId = keptTerms.add( terms.term( id ) );
+                keptPositive.set( keptId, positiveCounts.get( id ) );
+                keptNegative.set( keptId, negativeCounts.get( id ) );
             } else {
-                wordInformation.addNegative();
+                int hash = TermDictionary.hash( terms.term( id ) );
+                positiveSketch.add( hash, positiveCounts.get( id ) / 2 );
+                negativeSketch.add( hash, negativeCounts.get( id ) / 2 );
             }
-            wordsMap.put( word, wordInformation );
+        }
+        terms = keptTerms;
+        positiveCounts = keptPositive;
+        negativeCounts = keptNegative;
+    }
+    
+    /**
+     * grows the count arrays so they can keep the information of a word
+     * @param id the word's id
+     */
+    private void ensureCapacity( int id ) {
+        if( id >= positiveCounts.length() ) {
+            int length = Math.max( id + 1, positiveCounts.length() * 2 );
+            positiveCounts.grow( length );
+            negativeCounts.grow( length );
         }
     }
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * classifies the lines of an input file on many threads. A reader thread
+ * splits the input into chunks of lines, a pool of workers classifies the
+ * chunks and the calling thread writes them on the original order
+ * @author vitorcezar
+ */
+public class BatchClassifier {
+
+    /**
+     * number of chunks each worker may have waiting to be written, it keeps
+     * the memory bounded when the writer is slower than the workers
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * the classifier shared by the workers
+     */
+    private final TextClassifier classifier;
+
+    /**
+     * the multi-class model shared by the workers, or null if the texts are
+     * classified by the two-class classifier
+     */
+    private final MultiClassModel multiClass;
+
+    /**
+     * number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * indicates if the texts are scored until their classification is
+     * settled, instead of until their last word
+     */
+    private final boolean earlyExit;
+
+    /**
+     * class constructor
+     * @param classifier the classifier shared by the workers
+     * @param threads number of worker threads
+     */
+    public BatchClassifier( TextClassifier classifier, int threads ) {
+        this( classifier, threads, false );
+    }
+
+    /**
+     * creates a batch classifier that may only decide the classifications,
+     * printing the chances of the bounds where the scoring stopped
+     * @param classifier the classifier shared by the workers
+     * @param threads number of worker threads
+     * @param earlyExit indicates if the scoring of a text stops once its
+     * classification is settled
+     */
+    public BatchClassifier( TextClassifier classifier, int threads,
+        boolean earlyExit ) {
+        if( threads < 1 ) {
+            throw new IllegalArgumentException( "threads must be positive" );
+        }
+        this.classifier = classifier;
+        this.multiClass = null;
+        this.threads = threads;
+        this.earlyExit = earlyExit;
+    }
+
+    /**
+     * creates a batch classifier of a multi-class model, which prints the
+     * class of each text followed by its chance
+     * @param multiClass the model shared by the workers
+     * @param threads number of worker threads
+     */
+    public BatchClassifier( MultiClassModel multiClass, int threads ) {
+        if( threads < 1 ) {
+            throw new IllegalArgumentException( "threads must be positive" );
+        }
+        this.classifier = null;
+        this.multiClass = multiClass;
+        this.threads = threads;
+        this.earlyExit = false;
+    }
+
+    /**
+     * classifies every record of the input writing the results on the same
+     * order as the records were read
+     * @param reader the input that will be classified
+     * @param writer where the classification will be printed
+     * @throws IOException if the input can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    public void classify( RecordReader reader, PrintWriter writer )
+        throws IOException {
+        classify( new ChunkReader( reader ), writer );
+    }
+
+    /**
+     * classifies every record of the chunks of an input, as the ones of many
+     * files read at the same time, writing the results on the order of the
+     * chunks
+     * @param chunks the input that will be classified
+     * @param writer where the classification will be printed
+     * @throws IOException if the input can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    public void classify( ChunkReader chunks, PrintWriter writer )
+        throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool( threads );
+        BlockingQueue< Future< String > > pending =
+            new ArrayBlockingQueue<>( threads * CHUNKS_PER_THREAD );
+        Thread readerThread = new Thread( () ->
+            readChunks( chunks, workers, pending ), "batch-reader" );
+        readerThread.setDaemon( true );
+        readerThread.start();
+
+        try {
+            // the chunks are taken on the order they were read
+            String chunk = pending.take().get();
+            while( chunk != null ) {
+                long start = System.nanoTime();
+                writer.print( chunk );
+                if( Metrics.enabled() ) {
+                    Metrics.get().addTime( Metrics.Phase.WRITE, start );
+                }
+                chunk = pending.take().get();
+            }
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "classification interrupted", e );
+        } catch( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if( cause instanceof IOException ) {
+                throw ( IOException ) cause;
+            }
+            throw new IllegalStateException( cause );
+        } finally {
+            readerThread.interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * reads the input submitting its chunks to the workers. A null chunk
+     * indicates the end of the input
+     * @param chunks the input that will be classified
+     * @param workers the workers that will classify the chunks
+     * @param pending the chunks that weren't written yet
+     */
+    private void readChunks( ChunkReader chunks, ExecutorService workers,
+        BlockingQueue< Future< String > > pending ) {
+        try {
+            try {
+                TextRecord[] records = chunks.next();
+                while( records != null ) {
+                    pending.put( submit( workers, records ) );
+                    records = chunks.next();
+                }
+                pending.put( CompletableFuture.completedFuture( null ) );
+            } catch( IOException e ) {
+                pending.put( CompletableFuture.failedFuture( e ) );
+            }
+        } catch( InterruptedException e ) {
+            // the writer has given up, so nobody waits for the chunks
+        }
+    }
+
+    /**
+     * submits a chunk to the workers
+     * @param workers the workers that will classify the chunk
+     * @param records the chunk's records
+     * @return the chunk's classification
+     */
+    private Future< String > submit( ExecutorService workers,
+        TextRecord[] records ) {
+        return workers.submit( () -> classifyChunk( records ) );
+    }
+
+    /**
+     * classifies the records of a chunk
+     * @param records the chunk's records
+     * @return the chunk's classification, one line for each record
+     */
+    private String classifyChunk( TextRecord[] records ) {
+        StringBuilder builder = new StringBuilder( records.length * 24 );
+        String separator = System.lineSeparator();
+        if( multiClass != null ) {
+            Tokenizer tokenizer = WordTokenizer.local();
+            for( TextRecord record : records ) {
+                MultiClassResult result = multiClass.evaluate(
+                    record.getText(), tokenizer );
+                builder.append( result.getCategory() ).append( ',' )
+                    .append( result.chance() ).append( separator );
+            }
+            return builder.toString();
+        }
+        Tokenizer tokenizer = classifier.tokenizer();
+        for( TextRecord record : records ) {
+            ClassificationResult result = earlyExit ?
+                classifier.decide( record.getText(), tokenizer ) :
+                classifier.evaluate( record.getText() );
+            builder.append( result.getClassification() ).append( ',' )
+                .append( result.chance() ).append( separator );
+        }
+        return builder.toString();
+    }
+}
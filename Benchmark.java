@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * benchmarks of the training, the classification and the model files. Each
+ * benchmark is run a number of warmup iterations, so the code is compiled,
+ * and then the measured iterations, whose mean and standard deviation are
+ * printed. The examples come from a SyntheticCorpus, so the results can be
+ * compared between changes of the classifier
+ * @author vitorcezar
+ */
+public class Benchmark {
+
+    /**
+     * number of words of a short example, as a tweet
+     */
+    private static final int SHORT_EXAMPLE = 12;
+
+    /**
+     * number of words of a long example, as a document
+     */
+    private static final int LONG_EXAMPLE = 2000;
+
+    /**
+     * number of examples on each training iteration
+     */
+    private static final int TRAINING_EXAMPLES = 20000;
+
+    /**
+     * number of distinct examples classified on the classification
+     * iterations
+     */
+    private static final int CLASSIFIED_EXAMPLES = 256;
+
+    /**
+     * seed of the corpus, it's fixed so every run sees the same examples
+     */
+    private static final long SEED = 0x5EED;
+
+    /**
+     * an operation that is measured
+     */
+    private interface Operation {
+
+        /**
+         * runs the operation once
+         * @return the number of operations done, as an iteration may run
+         * many of them
+         * @throws IOException if the operation reads or writes a file
+         */
+        long run() throws IOException;
+    }
+
+    /**
+     * keeps the results of the operations, so they aren't removed as dead
+     * code
+     */
+    private static volatile double sink;
+
+    /**
+     * number of warmup iterations
+     */
+    private final int warmups;
+
+    /**
+     * number of measured iterations
+     */
+    private final int iterations;
+
+    /**
+     * class constructor
+     * @param warmups number of warmup iterations
+     * @param iterations number of measured iterations
+     */
+    public Benchmark( int warmups, int iterations ) {
+        this.warmups = warmups;
+        this.iterations = iterations;
+    }
+
+    /**
+     * runs every benchmark with a vocabulary
+     * @param vocabulary number of distinct words of the corpus
+     * @throws IOException if the model file can't be written or read
+     */
+    public void run( int vocabulary ) throws IOException {
+        System.out.printf( Locale.ROOT, "vocabulary: %d words%n", vocabulary );
+        SyntheticCorpus corpus = new SyntheticCorpus( vocabulary, SEED );
+
+        // the model is built with every word of the vocabulary
+        long before = usedMemory();
+        NaiveBayesClassifier classifier = new NaiveBayesClassifier();
+        int sweeps = ( vocabulary + LONG_EXAMPLE - 1 ) / LONG_EXAMPLE;
+        for( int i = 0; i < sweeps; i++ ) {
+            if( corpus.nextLabel() ) {
+                classifier.setPositiveExample( corpus.sweepExample( LONG_EXAMPLE ) );
+            } else {
+                classifier.setNegativeExample( corpus.sweepExample( LONG_EXAMPLE ) );
+            }
+        }
+        long classifierMemory = usedMemory() - before;
+        FrozenModel model = classifier.freeze();
+        long modelMemory = usedMemory() - before - classifierMemory;
+        System.out.printf( Locale.ROOT, "%-32s %12.1f MB%n",
+            "classifier heap", classifierMemory / 1e6 );
+        System.out.printf( Locale.ROOT, "%-32s %12.1f MB%n",
+            "frozen model heap", modelMemory / 1e6 );
+
+        String[] texts = new String[ TRAINING_EXAMPLES ];
+        boolean[] labels = new boolean[ TRAINING_EXAMPLES ];
+        for( int i = 0; i < texts.length; i++ ) {
+            labels[ i ] = corpus.nextLabel();
+            texts[ i ] = corpus.example( SHORT_EXAMPLE, labels[ i ] );
+        }
+        // the throughput is measured on a classifier of its own, so the
+        // classified, frozen and saved models are the same one
+        NaiveBayesClassifier trained = new NaiveBayesClassifier();
+        throughput( "training (examples/s)", () -> {
+            for( int i = 0; i < texts.length; i++ ) {
+                if( labels[ i ] ) {
+                    trained.setPositiveExample( texts[ i ] );
+                } else {
+                    trained.setNegativeExample( texts[ i ] );
+                }
+            }
+            return texts.length;
+        } );
+
+        String[] shortTexts = examples( corpus, SHORT_EXAMPLE );
+        String[] longTexts = examples( corpus, LONG_EXAMPLE );
+        latency( "classify short (ns/op)", () -> classify( classifier,
+            shortTexts ) );
+        latency( "classify long (ns/op)", () -> classify( classifier,
+            longTexts ) );
+        latency( "frozen short (ns/op)", () -> classify( model, shortTexts ) );
+        latency( "frozen long (ns/op)", () -> classify( model, longTexts ) );
+
+        File file = File.createTempFile( "benchmark", ".clf" );
+        try {
+            latency( "saveClassifier (ms)", () -> {
+                NaiveBayesClassifier.saveClassifier( file.getPath(), classifier );
+                return 1;
+            }, 1e6 );
+            latency( "loadClassifier (ms)", () -> {
+                sink = NaiveBayesClassifier.loadClassifier( file.getPath() )
+                    .getNumberPositiveExample();
+                return 1;
+            }, 1e6 );
+            System.out.printf( Locale.ROOT, "%-32s %12.1f MB%n",
+                "model file", file.length() / 1e6 );
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * generates the examples that will be classified
+     * @param corpus the corpus that generates them
+     * @param words number of words of each example
+     * @return the examples
+     */
+    private static String[] examples( SyntheticCorpus corpus, int words ) {
+        String[] texts = new String[ CLASSIFIED_EXAMPLES ];
+        for( int i = 0; i < texts.length; i++ ) {
+            texts[ i ] = corpus.example( words, corpus.nextLabel() );
+        }
+        return texts;
+    }
+
+    /**
+     * classifies examples
+     * @param classifier the classifier
+     * @param texts the examples
+     * @return the number of examples classified
+     */
+    private static long classify( TextClassifier classifier, String[] texts ) {
+        double sum = 0;
+        for( String text : texts ) {
+            sum += classifier.evaluate( text ).chanceOfPositive();
+        }
+        sink = sum;
+        return texts.length;
+    }
+
+    /**
+     * measures the number of operations per second
+     * @param name the benchmark's name
+     * @param operation the operation that is measured
+     * @throws IOException if the operation reads or writes a file
+     */
+    private void throughput( String name, Operation operation )
+        throws IOException {
+        double[] rates = new double[ iterations ];
+        for( int i = -warmups; i < iterations; i++ ) {
+            long start = System.nanoTime();
+            long operations = operation.run();
+            long elapsed = System.nanoTime() - start;
+            if( i >= 0 ) {
+                rates[ i ] = operations * 1e9 / elapsed;
+            }
+        }
+        print( name, rates );
+    }
+
+    /**
+     * measures the time of an operation in nanoseconds
+     * @param name the benchmark's name
+     * @param operation the operation that is measured
+     * @throws IOException if the operation reads or writes a file
+     */
+    private void latency( String name, Operation operation )
+        throws IOException {
+        latency( name, operation, 1 );
+    }
+
+    /**
+     * measures the time of an operation
+     * @param name the benchmark's name
+     * @param operation the operation that is measured
+     * @param unit number of nanoseconds of the printed unit
+     * @throws IOException if the operation reads or writes a file
+     */
+    private void latency( String name, Operation operation, double unit )
+        throws IOException {
+        double[] times = new double[ iterations ];
+        for( int i = -warmups; i < iterations; i++ ) {
+            long start = System.nanoTime();
+            long operations = operation.run();
+            long elapsed = System.nanoTime() - start;
+            if( i >= 0 ) {
+                times[ i ] = elapsed / unit / operations;
+            }
+        }
+        print( name, times );
+    }
+
+    /**
+     * prints the mean and the standard deviation of a benchmark
+     * @param name the benchmark's name
+     * @param values the value measured on each iteration
+     */
+    private static void print( String name, double[] values ) {
+        double mean = 0;
+        for( double value : values ) {
+            mean += value;
+        }
+        mean /= values.length;
+        double variance = 0;
+        for( double value : values ) {
+            variance += ( value - mean ) * ( value - mean );
+        }
+        double deviation = values.length > 1 ?
+            Math.sqrt( variance / ( values.length - 1 ) ) : 0;
+        System.out.printf( Locale.ROOT, "%-32s %12.1f +- %.1f%n", name, mean,
+            deviation );
+    }
+
+    /**
+     * returns the memory used by the heap after a garbage collection
+     * @return the memory used by the heap in bytes
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for( int i = 0; i < 3; i++ ) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * runs the benchmarks
+     * @param args the vocabularies, and optionally the number of warmup and
+     * measured iterations after a -i
+     */
+    public static void main( String[] args ) throws IOException {
+        int warmups = 3;
+        int iterations = 5;
+        int vocabularies = args.length;
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[ i ].equals( "-i" ) && i + 2 < args.length ) {
+                warmups = Integer.parseInt( args[ i + 1 ] );
+                iterations = Integer.parseInt( args[ i + 2 ] );
+                vocabularies = i;
+                break;
+            }
+        }
+        Benchmark benchmark = new Benchmark( warmups, iterations );
+        if( vocabularies == 0 ) {
+            benchmark.run( 10000 );
+        }
+        for( int i = 0; i < vocabularies; i++ ) {
+            benchmark.run( Integer.parseInt( args[ i ] ) );
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * cache of the results of a classifier, so repeated texts are answered
+ * without being scored again. The key is the text's tokens, as the score
+ * only depends on them, so texts that only differ on the case or on the
+ * punctuation share their result. The cache is split into segments, each
+ * one an LRU map behind its own lock, bounded on the number of entries and
+ * on the characters of the keys. The cache is cleared when the version of
+ * the classifier changes
+ * @author vitorcezar
+ */
+public class CachingClassifier implements TextClassifier {
+
+    /**
+     * number of segments, it must be a power of two
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * a part of the cache, with its own lock
+     */
+    private static final class Segment {
+
+        /**
+         * the results by their keys, on the order they were used
+         */
+        private final LinkedHashMap< String, ClassificationResult > results;
+
+        /**
+         * maximum number of entries
+         */
+        private final int maxEntries;
+
+        /**
+         * maximum number of characters of the keys
+         */
+        private final long maxChars;
+
+        /**
+         * number of characters of the keys
+         */
+        private long chars;
+
+        /**
+         * version of the classifier the results were taken from
+         */
+        private long version;
+
+        /**
+         * class constructor
+         * @param maxEntries maximum number of entries
+         * @param maxChars maximum number of characters of the keys
+         * @param version version of the classifier
+         */
+        private Segment( int maxEntries, long maxChars, long version ) {
+            results = new LinkedHashMap<>( 16, 0.75f, true );
+            this.maxEntries = maxEntries;
+            this.maxChars = maxChars;
+            this.version = version;
+        }
+    }
+
+    /**
+     * the classifier whose results are cached
+     */
+    private final TextClassifier classifier;
+
+    /**
+     * the parts of the cache
+     */
+    private final Segment[] segments;
+
+    /**
+     * number of texts answered by the cache
+     */
+    private final LongAdder hits;
+
+    /**
+     * number of texts scored by the classifier
+     */
+    private final LongAdder misses;
+
+    /**
+     * number of results evicted to bound the cache
+     */
+    private final LongAdder evictions;
+
+    /**
+     * number of times a segment was cleared because the classifier changed
+     */
+    private final LongAdder invalidations;
+
+    /**
+     * class constructor
+     * @param classifier the classifier whose results are cached
+     * @param maxEntries maximum number of results kept
+     * @param maxChars maximum number of characters of the keys kept
+     */
+    public CachingClassifier( TextClassifier classifier, int maxEntries,
+        long maxChars ) {
+        if( maxEntries < 1 || maxChars < 1 ) {
+            throw new IllegalArgumentException( "the cache must have a positive size" );
+        }
+        this.classifier = classifier;
+        segments = new Segment[ SEGMENTS ];
+        long version = classifier.version();
+        for( int i = 0; i < SEGMENTS; i++ ) {
+            segments[ i ] = new Segment( Math.max( 1, maxEntries / SEGMENTS ),
+                Math.max( 1, maxChars / SEGMENTS ), version );
+        }
+        hits = new LongAdder();
+        misses = new LongAdder();
+        evictions = new LongAdder();
+        invalidations = new LongAdder();
+    }
+
+    /**
+     * returns the text's classification and chances, from the cache if it
+     * was already classified
+     * @param text text that will be evaluated
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( String text ) {
+        return evaluate( text, tokenizer() );
+    }
+
+    /**
+     * returns the text's classification and chances, from the cache if it
+     * was already classified
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( CharSequence text,
+        Tokenizer tokenizer ) {
+        String key = key( text, tokenizer );
+        Segment segment = segments[ TermDictionary.mix( key.hashCode() ) &
+            ( SEGMENTS - 1 ) ];
+        long version = classifier.version();
+        synchronized( segment ) {
+            // the versions only grow, a segment ahead of the version read is
+            // left as it is
+            if( segment.version < version ) {
+                invalidate( segment, version );
+            }
+            ClassificationResult result = segment.version == version ?
+                segment.results.get( key ) : null;
+            if( result != null ) {
+                hits.increment();
+                return result;
+            }
+        }
+
+        // the text is scored outside the lock, so other texts of the
+        // segment aren't delayed
+        misses.increment();
+        ClassificationResult result = classifier.evaluate( text, tokenizer );
+        synchronized( segment ) {
+            if( segment.version == version &&
+                segment.results.put( key, result ) == null ) {
+                segment.chars += key.length();
+                evict( segment );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * returns the tokenizer of the cached classifier
+     * @return the tokenizer of the cached classifier for the current thread
+     */
+    @Override
+    public Tokenizer tokenizer() {
+        return classifier.tokenizer();
+    }
+
+    /**
+     * returns the version of the cached classifier
+     * @return the version of the cached classifier
+     */
+    @Override
+    public long version() {
+        return classifier.version();
+    }
+
+    /**
+     * returns the number of texts answered by the cache
+     * @return the number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * returns the number of texts scored by the classifier
+     * @return the number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * returns the number of results evicted to bound the cache
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * returns the number of times a part of the cache was cleared because
+     * the classifier changed
+     * @return the number of invalidations
+     */
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * returns the number of results kept
+     * @return the number of results kept
+     */
+    public int size() {
+        int size = 0;
+        for( Segment segment : segments ) {
+            synchronized( segment ) {
+                size += segment.results.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * returns the key of a text, its tokens separated by a space. When the
+     * tokenizer already left them that way on its normalized text, as
+     * WordTokenizer does, the key is copied from it at once
+     * @param text the text
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's key
+     */
+    private static String key( CharSequence text, Tokenizer tokenizer ) {
+        int tokens = tokenizer.tokenize( text );
+        if( tokens == 0 ) {
+            return "";
+        }
+        char[] chars = tokenizer.text();
+        int end = tokenizer.start( 0 ) + tokenizer.length( 0 );
+        boolean contiguous = true;
+        for( int token = 1; token < tokens && contiguous; token++ ) {
+            contiguous = tokenizer.start( token ) == end + 1 &&
+                chars[ end ] == ' ';
+            end = tokenizer.start( token ) + tokenizer.length( token );
+        }
+        if( contiguous ) {
+            return new String( chars, tokenizer.start( 0 ),
+                end - tokenizer.start( 0 ) );
+        }
+        StringBuilder builder = new StringBuilder( text.length() );
+        for( int token = 0; token < tokens; token++ ) {
+            if( token > 0 ) {
+                builder.append( ' ' );
+            }
+            builder.append( chars, tokenizer.start( token ),
+                tokenizer.length( token ) );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * clears a segment because the classifier changed
+     * @param segment the segment, its lock must be held
+     * @param version the new version of the classifier
+     */
+    private void invalidate( Segment segment, long version ) {
+        segment.results.clear();
+        segment.chars = 0;
+        segment.version = version;
+        invalidations.increment();
+    }
+
+    /**
+     * evicts the least recently used results of a segment until it's
+     * within its bounds
+     * @param segment the segment, its lock must be held
+     */
+    private void evict( Segment segment ) {
+        while( segment.results.size() > segment.maxEntries ||
+            ( segment.chars > segment.maxChars && segment.results.size() > 1 ) ) {
+            Iterator< Map.Entry< String, ClassificationResult > > eldest =
+                segment.results.entrySet().iterator();
+            segment.chars -= eldest.next().getKey().length();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * incremental checkpoints of a classifier that keeps being trained. The
+ * base is a classifier file as saveClassifier writes it, and each
+ * checkpoint appends to the log, on the base's path plus ".log", a frame
+ * with a classifier trained only with the examples added since the last
+ * one. Loading reads the base and merges the frames into it. When the log
+ * grows as large as the base, the whole classifier is compacted into a new
+ * base, so the time to load it stays bounded.
+ *
+ * The log starts with the size and checksum of the base it extends, and a
+ * log that doesn't match its base is ignored: that happens when the
+ * compaction replaced the base but stopped before replacing the log, whose
+ * frames are already on the new base, or when the base was written again by
+ * other means. Saving a classifier deletes its log, so a new base with the
+ * same bytes doesn't take the log of the old one either. A frame whose
+ * checksum doesn't match is a write that didn't finish, so it and
+ * everything after it are ignored
+ * @author vitorcezar
+ */
+public class CheckpointLog implements Closeable {
+
+    /**
+     * identifies the log files
+     */
+    public static final int MAGIC = 0x4E42434C;
+
+    /**
+     * version of the log format
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * suffix of the log's path, added to the base's path
+     */
+    public static final String SUFFIX = ".log";
+
+    /**
+     * bytes of the log's header: the magic, the version and the size and
+     * checksum of the base
+     */
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * bytes of a frame's header: the body's length and checksum
+     */
+    private static final int FRAME_HEADER = 8;
+
+    /**
+     * the log is compacted when it has this fraction of the base's size
+     */
+    private static final double COMPACTION_RATIO = 1.0;
+
+    /**
+     * size of the buffers used to write the base
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * path of the base
+     */
+    private final Path base;
+
+    /**
+     * path of the log
+     */
+    private final Path log;
+
+    /**
+     * the log opened for appending, or null
+     */
+    private FileChannel channel;
+
+    /**
+     * size of the base file
+     */
+    private long baseBytes;
+
+    /**
+     * checksum of the base's bytes
+     */
+    private long baseChecksum;
+
+    /**
+     * class constructor, the files are only touched by open and compact
+     * @param path path of the base, the log is on the same path plus ".log"
+     */
+    public CheckpointLog( String path ) {
+        base = Paths.get( path );
+        log = Paths.get( path + SUFFIX );
+    }
+
+    /**
+     * reads a classifier and the checkpoints appended to it, without
+     * modifying its files
+     * @param path path of the base
+     * @return the classifier with every complete checkpoint
+     * @throws IOException if the base can't be read
+     */
+    public static NaiveBayesClassifier read( String path ) throws IOException {
+        CheckpointLog checkpoints = new CheckpointLog( path );
+        NaiveBayesClassifier classifier = checkpoints.readBase();
+        checkpoints.replay( classifier );
+        return classifier;
+    }
+
+    /**
+     * reads the classifier and opens the log for appending. The frames that
+     * weren't written completely are removed, and a log that doesn't match
+     * the base is started again
+     * @return the classifier with every complete checkpoint
+     * @throws IOException if the files can't be read or written
+     */
+    public synchronized NaiveBayesClassifier open() throws IOException {
+        if( channel != null ) {
+            throw new IllegalStateException( "the log is already open" );
+        }
+        NaiveBayesClassifier classifier = readBase();
+        long end = replay( classifier );
+        if( end < 0 ) {
+            replaceLog();
+            end = HEADER_SIZE;
+        }
+        channel = FileChannel.open( log, StandardOpenOption.WRITE );
+        channel.truncate( end );
+        channel.position( end );
+        return classifier;
+    }
+
+    /**
+     * appends a checkpoint to the log, it's durable when this returns
+     * @param delta a classifier trained only with the examples added since
+     * the last checkpoint
+     * @throws IOException if the checkpoint can't be written
+     */
+    public synchronized void append( NaiveBayesClassifier delta )
+        throws IOException {
+        if( channel == null ) {
+            throw new IllegalStateException( "the log isn't open" );
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ModelFormat.write( delta, body, false );
+        byte[] bytes = body.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update( bytes );
+        ByteBuffer frame = ByteBuffer.allocate( FRAME_HEADER + bytes.length );
+        frame.putInt( bytes.length ).putInt( ( int ) checksum.getValue() )
+            .put( bytes ).flip();
+        while( frame.hasRemaining() ) {
+            channel.write( frame );
+        }
+        channel.force( false );
+    }
+
+    /**
+     * indicates if the log is large enough to be compacted, which keeps the
+     * time spent replaying it below the time spent reading the base
+     * @return true if the log should be compacted
+     * @throws IOException if the log's size can't be read
+     */
+    public synchronized boolean needsCompaction() throws IOException {
+        return channel != null &&
+            channel.size() - HEADER_SIZE > baseBytes * COMPACTION_RATIO;
+    }
+
+    /**
+     * writes a new base with the whole classifier and starts the log again.
+     * It works even if the log isn't open, which is how a base is created
+     * @param classifier the classifier with every checkpoint
+     * @throws IOException if the files can't be written
+     */
+    public synchronized void compact( NaiveBayesClassifier classifier )
+        throws IOException {
+        Path temporary = Paths.get( base + ".tmp" );
+        try( FileChannel output = FileChannel.open( temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING ) ) {
+            CRC32 checksum = new CRC32();
+            OutputStream stream = new BufferedOutputStream(
+                new CheckedOutputStream( Channels.newOutputStream( output ),
+                checksum ), BUFFER_SIZE );
+            ModelFormat.write( classifier, stream, false );
+            stream.flush();
+            output.force( true );
+            baseChecksum = checksum.getValue();
+        }
+        Files.move( temporary, base, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE );
+        baseBytes = Files.size( base );
+        // a crash here leaves a log that doesn't match the new base
+        replaceLog();
+        if( channel != null ) {
+            channel.close();
+            channel = FileChannel.open( log, StandardOpenOption.WRITE );
+            channel.position( HEADER_SIZE );
+        }
+    }
+
+    /**
+     * closes the log
+     * @throws IOException if the log can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if( channel != null ) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * deletes the log of a base, which must be done whenever the base is
+     * written again, as its checkpoints don't extend the new base
+     * @param path path of the base
+     * @throws IOException if the log can't be deleted
+     */
+    public static void discard( String path ) throws IOException {
+        Files.deleteIfExists( Paths.get( path + SUFFIX ) );
+    }
+
+    /**
+     * reads the classifier of the base, keeping the base's size and
+     * checksum to match the log against them
+     * @return the classifier of the base
+     * @throws IOException if the base can't be read
+     */
+    private NaiveBayesClassifier readBase() throws IOException {
+        CRC32 checksum = new CRC32();
+        try( InputStream input = new CheckedInputStream(
+            Channels.newInputStream( FileChannel.open( base,
+            StandardOpenOption.READ ) ), checksum ) ) {
+            NaiveBayesClassifier classifier = ModelFormat.read(
+                new BufferedInputStream( input, BUFFER_SIZE ) );
+            // the bytes the format doesn't read are part of the checksum
+            byte[] rest = new byte[ BUFFER_SIZE ];
+            int read = input.read( rest );
+            while( read >= 0 ) {
+                read = input.read( rest );
+            }
+            baseBytes = Files.size( base );
+            baseChecksum = checksum.getValue();
+            return classifier;
+        }
+    }
+
+    /**
+     * merges the complete frames of the log into the base's classifier
+     * @param classifier the classifier read from the base
+     * @return the offset after the last complete frame, or -1 if there is no
+     * log or it doesn't extend the base
+     * @throws IOException if the log can't be read
+     */
+    private long replay( NaiveBayesClassifier classifier ) throws IOException {
+        if( !Files.exists( log ) ) {
+            return -1;
+        }
+        MappedByteBuffer buffer;
+        try( FileChannel input = FileChannel.open( log,
+            StandardOpenOption.READ ) ) {
+            buffer = input.map( FileChannel.MapMode.READ_ONLY, 0,
+                input.size() );
+        }
+        if( buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC ||
+            buffer.getInt() != VERSION || buffer.getLong() != baseBytes ||
+            buffer.getLong() != baseChecksum ) {
+            return -1;
+        }
+        CRC32 checksum = new CRC32();
+        while( buffer.remaining() >= FRAME_HEADER ) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if( length < 0 || length > buffer.remaining() ) {
+                return buffer.position() - FRAME_HEADER;
+            }
+            byte[] bytes = new byte[ length ];
+            buffer.get( bytes );
+            checksum.reset();
+            checksum.update( bytes );
+            if( ( int ) checksum.getValue() != expected ) {
+                return buffer.position() - FRAME_HEADER - length;
+            }
+            classifier.merge( ModelFormat.read(
+                new ByteArrayInputStream( bytes ) ) );
+        }
+        return buffer.position();
+    }
+
+    /**
+     * replaces the log by an empty one that extends the base
+     * @throws IOException if the log can't be written
+     */
+    private void replaceLog() throws IOException {
+        Path temporary = Paths.get( log + ".tmp" );
+        try( FileChannel output = FileChannel.open( temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING ) ) {
+            ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            header.putInt( MAGIC ).putInt( VERSION )
+                .putLong( baseBytes ).putLong( baseChecksum ).flip();
+            while( header.hasRemaining() ) {
+                output.write( header );
+            }
+            output.force( true );
+        }
+        Files.move( temporary, log, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE );
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * reads the records of an input file in chunks, so they can be handed to
+ * worker threads
+ * @author vitorcezar
+ */
+public class ChunkReader implements Closeable {
+
+    /**
+     * number of records on a chunk
+     */
+    public static final int CHUNK_SIZE = 1024;
+
+    /**
+     * the input that is being read
+     */
+    private final RecordReader reader;
+
+    /**
+     * class constructor
+     * @param reader the input that will be read
+     */
+    public ChunkReader( RecordReader reader ) {
+        this.reader = reader;
+    }
+
+    /**
+     * constructor of the readers that don't read a single file
+     */
+    ChunkReader() {
+        this.reader = null;
+    }
+
+    /**
+     * opens the files of an input, which may be a file, a directory or a
+     * glob, as InputFiles expands it. A single file is read by the calling
+     * thread, and many files are read by a number of reader threads
+     * @param input the file, directory or glob
+     * @param labelled indicates if the lines start with a label
+     * @param readers number of threads reading the files at the same time
+     * @return the reader of the files' records
+     * @throws IOException if no file is found or a single file can't be
+     * opened
+     */
+    public static ChunkReader open( String input, boolean labelled,
+        int readers ) throws IOException {
+        List< Path > files = InputFiles.expand( input );
+        if( files.size() == 1 ) {
+            return new ChunkReader( RecordReader.open( files.get( 0 ),
+                labelled ) );
+        }
+        return new ParallelChunkReader( files, labelled, readers );
+    }
+
+    /**
+     * reads the next chunk of records
+     * @return the records read, or null if the input is over
+     * @throws IOException if the input can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    public TextRecord[] next() throws IOException {
+        boolean metrics = Metrics.enabled();
+        long start = metrics ? System.nanoTime() : 0;
+        TextRecord[] records = new TextRecord[ CHUNK_SIZE ];
+        int size = 0;
+        TextRecord record;
+        while( size < CHUNK_SIZE && ( record = reader.next() ) != null ) {
+            records[ size++ ] = record;
+        }
+        if( metrics ) {
+            Metrics.get().addTime( Metrics.Phase.PARSE, start );
+        }
+        if( size == 0 ) {
+            return null;
+        } else if( size < CHUNK_SIZE ) {
+            return Arrays.copyOf( records, size );
+        }
+        return records;
+    }
+
+    /**
+     * returns the error of a record of the last chunk read that isn't
+     * valid, as one whose label the classifier can't be trained with
+     * @param record the record, from the last chunk read
+     * @return the error of the record's line
+     */
+    public InputFormatException incorrect( TextRecord record ) {
+        return new InputFormatException( record.getLine() );
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * immutable outcome of a classification, it can be shared between threads
+ * @author vitorcezar
+ */
+public final class ClassificationResult {
+
+    /**
+     * the example's classification
+     */
+    private final int classification;
+
+    /**
+     * the chance that the example is positive
+     */
+    private final double positiveChance;
+
+    /**
+     * the chance that the example is negative
+     */
+    private final double negativeChance;
+
+    /**
+     * indicates if the scoring stopped before the last word
+     */
+    private final boolean exitedEarly;
+
+    /**
+     * class constructor
+     * @param classification the example's classification
+     * @param positiveChance the chance that the example is positive
+     * @param negativeChance the chance that the example is negative
+     */
+    public ClassificationResult( int classification, double positiveChance,
+        double negativeChance ) {
+        this( classification, positiveChance, negativeChance, false );
+    }
+
+    /**
+     * creates the result of a scoring that may have stopped early
+     * @param classification the example's classification
+     * @param positiveChance the chance that the example is positive
+     * @param negativeChance the chance that the example is negative
+     * @param exitedEarly indicates if the scoring stopped before the last
+     * word
+     */
+    public ClassificationResult( int classification, double positiveChance,
+        double negativeChance, boolean exitedEarly ) {
+        this.classification = classification;
+        this.positiveChance = positiveChance;
+        this.negativeChance = negativeChance;
+        this.exitedEarly = exitedEarly;
+    }
+
+    /**
+     * returns the result of an example given the logarithm of the ratio
+     * between its positive and negative posteriors
+     * @param logOdds the log-odds of the example being positive
+     * @return the result of the example
+     */
+    public static ClassificationResult fromLogOdds( double logOdds ) {
+        // the posteriors are taken from the log-odds, so they can't underflow
+        double positiveChance = 1 / ( 1 + Math.exp( -logOdds ) );
+        double negativeChance = 1 / ( 1 + Math.exp( logOdds ) );
+        if( logOdds > 0 ) {
+            return new ClassificationResult( NaiveBayesClassifier.TRUE,
+                positiveChance, negativeChance );
+        } else {
+            return new ClassificationResult( NaiveBayesClassifier.FALSE,
+                positiveChance, negativeChance );
+        }
+    }
+
+    /**
+     * returns the result of an example whose scoring stopped because the
+     * remaining words couldn't change its classification. The chances are
+     * the ones of the bound of the log-odds that is closest to zero, so the
+     * chance of the classification is a lower bound of the real one
+     * @param boundLogOdds the bound of the example's log-odds, it's positive
+     * if the example is positive
+     * @return the result of the example
+     */
+    public static ClassificationResult fromBound( double boundLogOdds ) {
+        ClassificationResult bound = fromLogOdds( boundLogOdds );
+        return new ClassificationResult( bound.classification,
+            bound.positiveChance, bound.negativeChance, true );
+    }
+
+    /**
+     * indicates if the scoring stopped before the last word, in which case
+     * the chances aren't calibrated
+     * @return true if the scoring exited early
+     */
+    public boolean exitedEarly() {
+        return exitedEarly;
+    }
+
+    /**
+     * returns the example's classification
+     * @return NaiveBayesClassifier.TRUE or NaiveBayesClassifier.FALSE
+     */
+    public int getClassification() {
+        return classification;
+    }
+
+    /**
+     * returns the chance that the example is positive
+     * @return the chance that the example is positive
+     */
+    public double chanceOfPositive() {
+        return positiveChance;
+    }
+
+    /**
+     * returns the chance that the example is negative
+     * @return the chance that the example is negative
+     */
+    public double chanceOfNegative() {
+        return negativeChance;
+    }
+
+    /**
+     * returns the chance of the class the example was classified as
+     * @return the chance of the example's classification
+     */
+    public double chance() {
+        if( classification == NaiveBayesClassifier.TRUE ) {
+            return positiveChance;
+        } else {
+            return negativeChance;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP server that loads a model once and classifies the texts posted to
+ * it. POST /classify takes texts on the format of the classification files,
+ * one quoted text for each line, and answers with a classification for each
+ * line, as the result files. GET /stats answers with the number of requests
+ * and texts, the throughput and the latency percentiles. The texts of
+ * concurrent requests are scored together by a MicroBatcher. A server that
+ * trains a live classifier takes examples on POST /train as well, on the
+ * format of the training files, which are classified with once the live
+ * classifier publishes its training
+ * @author vitorcezar
+ */
+public class ClassificationServer {
+
+    /**
+     * number of threads handling the connections for each scoring thread,
+     * they mostly wait for their batches
+     */
+    private static final int HANDLERS_PER_SCORER = 8;
+
+    /**
+     * maximum number of texts on a batch
+     */
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * how long a small batch waits for more requests, in microseconds
+     */
+    private static final long MAX_DELAY = 100;
+
+    /**
+     * initial size of the buffer that reads a request
+     */
+    private static final int REQUEST_BUFFER_SIZE = 1 << 13;
+
+    /**
+     * the classifier that scores the texts
+     */
+    private final TextClassifier classifier;
+
+    /**
+     * the live classifier the examples are added to, or null if the server
+     * doesn't train
+     */
+    private final LiveClassifier trainer;
+
+    /**
+     * number of examples added to the live classifier
+     */
+    private final LongAdder examples;
+
+    /**
+     * the HTTP server
+     */
+    private final HttpServer server;
+
+    /**
+     * the threads handling the connections
+     */
+    private final ExecutorService handlers;
+
+    /**
+     * scores the texts of the requests
+     */
+    private final MicroBatcher batcher;
+
+    /**
+     * latency of the classification requests
+     */
+    private final LatencyHistogram latencies;
+
+    /**
+     * number of classification requests answered
+     */
+    private final LongAdder requests;
+
+    /**
+     * number of texts classified
+     */
+    private final LongAdder texts;
+
+    /**
+     * when the server was started, in nanoseconds
+     */
+    private final long started;
+
+    /**
+     * class constructor, the server is started at once
+     * @param classifier the classifier that scores the texts
+     * @param port the port the server listens to
+     * @param threads number of scoring threads
+     * @throws IOException if the server can't listen to the port
+     */
+    public ClassificationServer( TextClassifier classifier, int port,
+        int threads ) throws IOException {
+        this( classifier, null, port, threads );
+    }
+
+    /**
+     * creates a server that trains a live classifier as well, the server is
+     * started at once
+     * @param classifier the classifier that scores the texts, the live
+     * classifier or a cache in front of it
+     * @param trainer the live classifier the examples are added to
+     * @param port the port the server listens to
+     * @param threads number of scoring threads
+     * @throws IOException if the server can't listen to the port
+     */
+    public ClassificationServer( TextClassifier classifier,
+        LiveClassifier trainer, int port, int threads ) throws IOException {
+        this.classifier = classifier;
+        this.trainer = trainer;
+        examples = new LongAdder();
+        batcher = new MicroBatcher( classifier, threads, MAX_BATCH, MAX_DELAY );
+        latencies = new LatencyHistogram();
+        requests = new LongAdder();
+        texts = new LongAdder();
+        handlers = Executors.newFixedThreadPool( threads * HANDLERS_PER_SCORER );
+        // without it the response headers and body wait for delayed ACKs,
+        // which adds about 40 ms to each response
+        if( System.getProperty( "sun.net.httpserver.nodelay" ) == null ) {
+            System.setProperty( "sun.net.httpserver.nodelay", "true" );
+        }
+        server = HttpServer.create( new InetSocketAddress( port ), 0 );
+        server.createContext( "/classify", this::classify );
+        server.createContext( "/stats", this::stats );
+        if( trainer != null ) {
+            server.createContext( "/train", this::train );
+        }
+        server.setExecutor( handlers );
+        started = System.nanoTime();
+        server.start();
+    }
+
+    /**
+     * returns the port the server listens to
+     * @return the port the server listens to
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * stops the server
+     */
+    public void stop() {
+        server.stop( 0 );
+        handlers.shutdownNow();
+        batcher.close();
+    }
+
+    /**
+     * returns the statistics of the server
+     * @return the statistics, one for each line
+     */
+    public String stats() {
+        double seconds = ( System.nanoTime() - started ) / 1e9;
+        String stats = String.format( Locale.ROOT, "requests %d%ntexts %d%n" +
+            "throughput %.1f texts/s%np50 %.3f ms%np99 %.3f ms%n",
+            requests.sum(), texts.sum(), texts.sum() / seconds,
+            latencies.percentile( 50 ) / 1e6, latencies.percentile( 99 ) / 1e6 );
+        if( classifier instanceof CachingClassifier ) {
+            CachingClassifier cache = ( CachingClassifier ) classifier;
+            stats += String.format( Locale.ROOT, "cache hits %d%n" +
+                "cache misses %d%ncache evictions %d%n", cache.hits(),
+                cache.misses(), cache.evictions() );
+        }
+        if( trainer != null ) {
+            stats += String.format( Locale.ROOT, "examples %d%nepoch %d%n",
+                examples.sum(), trainer.epoch() );
+        }
+        return stats;
+    }
+
+    /**
+     * classifies the texts of a request
+     * @param exchange the request and its response
+     * @throws IOException if the request can't be read or answered
+     */
+    private void classify( HttpExchange exchange ) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if( !exchange.getRequestMethod().equals( "POST" ) ) {
+                respond( exchange, 405, "Use POST\n" );
+                return;
+            }
+            List< String > lines = new ArrayList<>();
+            try {
+                RecordReader reader = new RecordReader( Channels.newChannel(
+                    exchange.getRequestBody() ), false, REQUEST_BUFFER_SIZE );
+                TextRecord record;
+                while( ( record = reader.next() ) != null ) {
+                    lines.add( record.getText() );
+                }
+            } catch( InputFormatException e ) {
+                respond( exchange, 400, e.getMessage() + "\n" );
+                return;
+            }
+
+            ClassificationResult[] results;
+            try {
+                results = batcher.submit( lines.toArray( new String[ 0 ] ) )
+                    .get();
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                respond( exchange, 503, "Server stopping\n" );
+                return;
+            } catch( ExecutionException e ) {
+                respond( exchange, 500, e.getCause() + "\n" );
+                return;
+            }
+            StringBuilder builder = new StringBuilder( results.length * 24 );
+            for( ClassificationResult result : results ) {
+                builder.append( result.getClassification() ).append( ',' )
+                    .append( result.chance() ).append( '\n' );
+            }
+            respond( exchange, 200, builder.toString() );
+            requests.increment();
+            texts.add( results.length );
+            latencies.record( System.nanoTime() - start );
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * adds the examples of a request to the live classifier. The request is
+     * read whole before any example is added, so a request with an
+     * incorrect line adds none
+     * @param exchange the request and its response
+     * @throws IOException if the request can't be read or answered
+     */
+    private void train( HttpExchange exchange ) throws IOException {
+        try {
+            if( !exchange.getRequestMethod().equals( "POST" ) ) {
+                respond( exchange, 405, "Use POST\n" );
+                return;
+            }
+            List< TextRecord > records = new ArrayList<>();
+            try {
+                RecordReader reader = new RecordReader( Channels.newChannel(
+                    exchange.getRequestBody() ), true, REQUEST_BUFFER_SIZE );
+                TextRecord record;
+                while( ( record = reader.next() ) != null ) {
+                    if( record.getLabel() != NaiveBayesClassifier.TRUE &&
+                        record.getLabel() != NaiveBayesClassifier.FALSE ) {
+                        throw new InputFormatException( record.getLine() );
+                    }
+                    records.add( record );
+                }
+            } catch( InputFormatException e ) {
+                respond( exchange, 400, e.getMessage() + "\n" );
+                return;
+            }
+            for( TextRecord record : records ) {
+                if( record.getLabel() == NaiveBayesClassifier.TRUE ) {
+                    trainer.setPositiveExample( record.getText() );
+                } else {
+                    trainer.setNegativeExample( record.getText() );
+                }
+            }
+            examples.add( records.size() );
+            respond( exchange, 200, records.size() + " examples\n" );
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * answers with the statistics of the server
+     * @param exchange the request and its response
+     * @throws IOException if the request can't be answered
+     */
+    private void stats( HttpExchange exchange ) throws IOException {
+        try {
+            respond( exchange, 200, stats() );
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * writes a response
+     * @param exchange the request and its response
+     * @param status the HTTP status
+     * @param body the response's body
+     * @throws IOException if the response can't be written
+     */
+    private static void respond( HttpExchange exchange, int status,
+        String body ) throws IOException {
+        byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().set( "Content-Type",
+            "text/plain; charset=utf-8" );
+        if( bytes.length == 0 ) {
+            // a length of zero would be taken as a chunked response
+            exchange.sendResponseHeaders( status, -1 );
+            return;
+        }
+        exchange.sendResponseHeaders( status, bytes.length );
+        try( OutputStream output = exchange.getResponseBody() ) {
+            output.write( bytes );
+        }
+    }
+}
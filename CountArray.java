@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * growable array of counts, kept on an int array or on a buffer of an
+ * off-heap arena
+ * @author vitorcezar
+ */
+public final class CountArray {
+
+    /**
+     * the counts when they are on the heap, or null
+     */
+    private int[] values;
+
+    /**
+     * the counts when they are off the heap, or null
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * the arena of the buffer, or null
+     */
+    private final OffHeapMemory memory;
+
+    /**
+     * number of counts
+     */
+    private int length;
+
+    /**
+     * creates zeroed counts on the heap
+     * @param length number of counts
+     */
+    public CountArray( int length ) {
+        this( length, null );
+    }
+
+    /**
+     * creates zeroed counts
+     * @param length number of counts
+     * @param memory the arena where the counts are kept, or null to keep
+     * them on the heap
+     */
+    public CountArray( int length, OffHeapMemory memory ) {
+        this.memory = memory;
+        this.length = length;
+        if( memory == null ) {
+            values = new int[ length ];
+        } else {
+            buffer = memory.allocate( 4L * length );
+        }
+    }
+
+    /**
+     * returns a count
+     * @param index the count's index
+     * @return the count
+     */
+    public int get( int index ) {
+        if( values != null ) {
+            return values[ index ];
+        }
+        return buffer.getInt( index << 2 );
+    }
+
+    /**
+     * sets a count
+     * @param index the count's index
+     * @param value the new count
+     */
+    public void set( int index, int value ) {
+        if( values != null ) {
+            values[ index ] = value;
+        } else {
+            buffer.putInt( index << 2, value );
+        }
+    }
+
+    /**
+     * adds to a count
+     * @param index the count's index
+     * @param value the value added to the count
+     */
+    public void add( int index, int value ) {
+        if( values != null ) {
+            values[ index ] += value;
+        } else {
+            buffer.putInt( index << 2, buffer.getInt( index << 2 ) + value );
+        }
+    }
+
+    /**
+     * returns the number of counts
+     * @return the number of counts
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * grows the array, keeping its counts
+     * @param newLength the new number of counts, which can't be smaller
+     */
+    public void grow( int newLength ) {
+        if( values != null ) {
+            values = Arrays.copyOf( values, newLength );
+        } else {
+            ByteBuffer grown = memory.allocate( 4L * newLength );
+            grown.put( 0, buffer, 0, 4 * length );
+            memory.free( buffer );
+            buffer = grown;
+        }
+        length = newLength;
+    }
+
+    /**
+     * returns the bytes taken by the counts
+     * @return the bytes taken by the counts
+     */
+    public long bytes() {
+        return 4L * length;
+    }
+}
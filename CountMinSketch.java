@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * count-min sketch that estimates how many times each term was seen on a
+ * fixed amount of memory. Each term has a counter on each row of the table,
+ * and its estimate is the smallest of them, which is never below the real
+ * count. The counters are updated conservatively: only the ones below the
+ * new estimate are raised, which keeps the estimates closer to the counts
+ * @author vitorcezar
+ */
+public class CountMinSketch {
+
+    /**
+     * number of rows of the table
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * the counters, one row after the other
+     */
+    private final int[] table;
+
+    /**
+     * number of counters on each row minus one, the width is a power of two
+     */
+    private final int mask;
+
+    /**
+     * class constructor
+     * @param width the minimum number of counters on each row, it's rounded
+     * up to a power of two
+     */
+    public CountMinSketch( int width ) {
+        int capacity = 1;
+        while( capacity < width ) {
+            capacity *= 2;
+        }
+        table = new int[ capacity * DEPTH ];
+        mask = capacity - 1;
+    }
+
+    /**
+     * adds to the count of a term
+     * @param hash the term's hash, as TermDictionary.hash computes it
+     * @param count the number of times the term was seen
+     * @return the term's new estimate
+     */
+    public int add( int hash, int count ) {
+        int estimate = estimate( hash );
+        int updated = ( int ) Math.min( ( long ) estimate + count,
+            Integer.MAX_VALUE );
+        int step = step( hash );
+        for( int row = 0; row < DEPTH; row++ ) {
+            int cell = row * ( mask + 1 ) + ( ( hash + row * step ) & mask );
+            if( table[ cell ] < updated ) {
+                table[ cell ] = updated;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * returns the estimate of how many times a term was seen
+     * @param hash the term's hash, as TermDictionary.hash computes it
+     * @return the term's estimate, which is never below its count
+     */
+    public int estimate( int hash ) {
+        int step = step( hash );
+        int estimate = Integer.MAX_VALUE;
+        for( int row = 0; row < DEPTH; row++ ) {
+            int cell = row * ( mask + 1 ) + ( ( hash + row * step ) & mask );
+            estimate = Math.min( estimate, table[ cell ] );
+        }
+        return estimate;
+    }
+
+    /**
+     * adds the counts of another sketch to this one, cell by cell, so the
+     * estimates are the ones of a sketch that had seen the terms of both
+     * @param other the sketch that will be added, it must have the same
+     * width
+     */
+    public void merge( CountMinSketch other ) {
+        if( other.table.length != table.length ) {
+            throw new IllegalArgumentException( "the sketches have different widths" );
+        }
+        for( int cell = 0; cell < table.length; cell++ ) {
+            table[ cell ] = ( int ) Math.min( ( long ) table[ cell ] +
+                other.table[ cell ], Integer.MAX_VALUE );
+        }
+    }
+
+    /**
+     * returns the bytes taken by the counters
+     * @return the bytes taken by the counters
+     */
+    public long bytes() {
+        return 4L * table.length;
+    }
+
+    /**
+     * halves every counter, so the terms seen long ago lose their weight
+     */
+    public void halve() {
+        for( int cell = 0; cell < table.length; cell++ ) {
+            table[ cell ] >>>= 1;
+        }
+    }
+
+    /**
+     * returns the distance between the columns of a term on consecutive
+     * rows. It's taken from the hash's bits that don't pick the first
+     * column, and it's odd so the columns are different on every row
+     * @param hash the term's hash
+     * @return the step between the term's columns
+     */
+    private static int step( int hash ) {
+        return TermDictionary.mix( hash ) | 1;
+    }
+}
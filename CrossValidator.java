@@ -0,0 +1,494 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * k-fold cross-validation that trains the corpus a single time. Each fold
+ * trains its own classifier, the classifiers are merged into the model of
+ * the whole corpus, and the model that scores a fold has the log-ratios of
+ * the whole one with the fold's counts subtracted, which are the ones of a
+ * model trained with the other folds. The records aren't kept, so the
+ * corpus is read again to be scored
+ * @author vitorcezar
+ */
+public class CrossValidator {
+
+    /**
+     * number of chunks of each fold that may be waiting to be trained, it
+     * keeps the memory bounded when the reader is faster than the workers
+     */
+    private static final int CHUNKS_PER_FOLD = 2;
+
+    /**
+     * number of chunks each worker may have waiting to be scored
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * number of folds
+     */
+    private final int folds;
+
+    /**
+     * number of threads training and scoring the folds
+     */
+    private final int threads;
+
+    /**
+     * creates the empty classifiers of the folds
+     */
+    private final Supplier< NaiveBayesClassifier > factory;
+
+    /**
+     * class constructor
+     * @param folds number of folds, at least two
+     * @param threads number of threads training and scoring the folds
+     */
+    public CrossValidator( int folds, int threads ) {
+        this( folds, threads, NaiveBayesClassifier::new );
+    }
+
+    /**
+     * creates a cross-validation of classifiers that are created by a
+     * factory, as the ones with n-grams
+     * @param folds number of folds, at least two
+     * @param threads number of threads training and scoring the folds
+     * @param factory creates the empty classifiers, all of them must be
+     * created the same way so they can be merged, and they can't be pruned
+     */
+    public CrossValidator( int folds, int threads,
+        Supplier< NaiveBayesClassifier > factory ) {
+        if( folds < 2 ) {
+            throw new IllegalArgumentException( "there must be at least two folds" );
+        }
+        if( threads < 1 ) {
+            throw new IllegalArgumentException( "threads must be positive" );
+        }
+        this.folds = folds;
+        this.threads = threads;
+        this.factory = factory;
+    }
+
+    /**
+     * cross-validates a corpus, the record i being put on the fold i modulo
+     * the number of folds. The corpus is read twice and its records aren't
+     * kept: the first reading trains the folds and the second scores them
+     * @param corpus opens the corpus, one example for each record
+     * @return the outcome of each fold
+     * @throws IOException if the corpus can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    public Fold[] validate( Corpus corpus ) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool( threads );
+        try {
+            NaiveBayesClassifier[] partials = new NaiveBayesClassifier[ folds ];
+            long[] trainNanos = new long[ folds ];
+            try( ChunkReader chunks = corpus.open() ) {
+                train( chunks, partials, trainNanos );
+            }
+            NaiveBayesClassifier whole = factory.get();
+            for( NaiveBayesClassifier partial : partials ) {
+                whole.merge( partial );
+            }
+
+            // the models share the words of the whole classifier, so each
+            // of them only takes the log-ratios of its words
+            List< Future< FrozenModel > > built = new ArrayList<>();
+            long[] buildNanos = new long[ folds ];
+            for( int fold = 0; fold < folds; fold++ ) {
+                int index = fold;
+                built.add( workers.submit( () -> {
+                    long start = System.nanoTime();
+                    FrozenModel model = whole.freezeWithout( partials[ index ] );
+                    buildNanos[ index ] = System.nanoTime() - start;
+                    return model;
+                } ) );
+            }
+            FrozenModel[] models = new FrozenModel[ folds ];
+            for( int fold = 0; fold < folds; fold++ ) {
+                models[ fold ] = built.get( fold ).get();
+                partials[ fold ] = null;
+            }
+
+            long[][] matrices = new long[ folds ][ 4 ];
+            long[] scoreNanos = new long[ folds ];
+            try( ChunkReader chunks = corpus.open() ) {
+                score( chunks, workers, models, matrices, scoreNanos );
+            }
+            Fold[] result = new Fold[ folds ];
+            for( int fold = 0; fold < folds; fold++ ) {
+                long[] matrix = matrices[ fold ];
+                result[ fold ] = new Fold( fold, matrix[ 3 ], matrix[ 1 ],
+                    matrix[ 2 ], matrix[ 0 ], trainNanos[ fold ],
+                    buildNanos[ fold ], scoreNanos[ fold ] );
+            }
+            return result;
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "cross-validation interrupted", e );
+        } catch( ExecutionException e ) {
+            throw new IllegalStateException( e.getCause() );
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * trains the classifier of each fold with its records. The folds are
+     * split between lanes of a single thread, so each fold is trained by a
+     * single classifier on the order of its records
+     * @param chunks the corpus
+     * @param partials where the classifier of each fold is put
+     * @param trainNanos where the nanoseconds spent training each fold are
+     * put
+     * @throws IOException if the corpus can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     * @throws InterruptedException if the training is interrupted
+     */
+    private void train( ChunkReader chunks, NaiveBayesClassifier[] partials,
+        long[] trainNanos ) throws IOException, InterruptedException {
+        for( int fold = 0; fold < folds; fold++ ) {
+            partials[ fold ] = factory.get();
+        }
+        int lanes = Math.min( threads, folds );
+        ExecutorService[] workers = new ExecutorService[ lanes ];
+        for( int lane = 0; lane < lanes; lane++ ) {
+            workers[ lane ] = Executors.newSingleThreadExecutor();
+        }
+        AtomicReference< RuntimeException > failure = new AtomicReference<>();
+        Semaphore pending = new Semaphore( folds * CHUNKS_PER_FOLD );
+        long count = 0;
+        try {
+            for( TextRecord[] chunk = chunks.next(); chunk != null &&
+                failure.get() == null; chunk = chunks.next() ) {
+                List< List< TextRecord > > split = new ArrayList<>();
+                for( int fold = 0; fold < folds; fold++ ) {
+                    split.add( new ArrayList<>() );
+                }
+                for( TextRecord record : chunk ) {
+                    verifyLabel( chunks, record );
+                    split.get( ( int ) ( count++ % folds ) ).add( record );
+                }
+                for( int fold = 0; fold < folds; fold++ ) {
+                    int index = fold;
+                    List< TextRecord > records = split.get( fold );
+                    if( records.isEmpty() ) {
+                        continue;
+                    }
+                    pending.acquire();
+                    workers[ fold % lanes ].execute( () -> {
+                        try {
+                            long start = System.nanoTime();
+                            train( partials[ index ], records );
+                            trainNanos[ index ] += System.nanoTime() - start;
+                        } catch( RuntimeException e ) {
+                            failure.compareAndSet( null, e );
+                        } finally {
+                            pending.release();
+                        }
+                    } );
+                }
+            }
+            for( ExecutorService lane : workers ) {
+                lane.shutdown();
+            }
+            for( ExecutorService lane : workers ) {
+                lane.awaitTermination( Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+            }
+        } finally {
+            for( ExecutorService lane : workers ) {
+                lane.shutdownNow();
+            }
+        }
+        if( failure.get() != null ) {
+            throw failure.get();
+        }
+        if( count < folds ) {
+            throw new IllegalArgumentException( "there are fewer examples than folds" );
+        }
+    }
+
+    /**
+     * verifies that a record is a positive or negative example
+     * @param chunks the corpus the record was read from
+     * @param record the record, from the last chunk read
+     * @throws InputFormatException if the record has another target, with
+     * the file of the record when the corpus has many
+     */
+    private static void verifyLabel( ChunkReader chunks, TextRecord record )
+        throws InputFormatException {
+        if( record.getLabel() != NaiveBayesClassifier.FALSE &&
+            record.getLabel() != NaiveBayesClassifier.TRUE ) {
+            throw chunks.incorrect( record );
+        }
+    }
+
+    /**
+     * trains a classifier with records of a fold
+     * @param classifier the fold's classifier
+     * @param records the fold's records
+     */
+    private static void train( NaiveBayesClassifier classifier,
+        List< TextRecord > records ) {
+        Tokenizer tokenizer = classifier.tokenizer();
+        for( TextRecord record : records ) {
+            if( record.getLabel() == NaiveBayesClassifier.TRUE ) {
+                classifier.setPositiveExample( record.getText(), tokenizer );
+            } else {
+                classifier.setNegativeExample( record.getText(), tokenizer );
+            }
+        }
+    }
+
+    /**
+     * scores each record with the model of the other folds, on chunks
+     * scored at the same time by the workers
+     * @param chunks the corpus, read again on the same order
+     * @param workers the workers that score the chunks
+     * @param models the model of each fold
+     * @param matrices where the confusion matrix of each fold is summed
+     * @param scoreNanos where the nanoseconds spent scoring each fold are
+     * summed
+     * @throws IOException if the corpus can't be read
+     * @throws InterruptedException if the scoring is interrupted
+     * @throws ExecutionException if a chunk can't be scored
+     */
+    private void score( ChunkReader chunks, ExecutorService workers,
+        FrozenModel[] models, long[][] matrices, long[] scoreNanos )
+        throws IOException, InterruptedException, ExecutionException {
+        Semaphore pending = new Semaphore( threads * CHUNKS_PER_THREAD );
+        List< Future< ? > > scored = new ArrayList<>();
+        long count = 0;
+        for( TextRecord[] chunk = chunks.next(); chunk != null;
+            chunk = chunks.next() ) {
+            TextRecord[] records = chunk;
+            long first = count;
+            count += chunk.length;
+            pending.acquire();
+            scored.add( workers.submit( () -> {
+                try {
+                    score( records, first, models, matrices, scoreNanos );
+                } finally {
+                    pending.release();
+                }
+            } ) );
+            // the finished chunks are checked so the list stays short
+            while( !scored.isEmpty() && scored.get( 0 ).isDone() ) {
+                scored.remove( 0 ).get();
+            }
+        }
+        for( Future< ? > future : scored ) {
+            future.get();
+        }
+    }
+
+    /**
+     * scores the records of a chunk with the model of the other folds
+     * @param chunk the chunk's records
+     * @param first the index of the chunk's first record on the corpus
+     * @param models the model of each fold
+     * @param matrices where the confusion matrix of each fold is summed
+     * @param scoreNanos where the nanoseconds spent scoring each fold are
+     * summed
+     */
+    private void score( TextRecord[] chunk, long first, FrozenModel[] models,
+        long[][] matrices, long[] scoreNanos ) {
+        long[][] matrix = new long[ folds ][ 4 ];
+        long[] nanos = new long[ folds ];
+        Tokenizer tokenizer = models[ 0 ].tokenizer();
+        for( int fold = 0; fold < folds; fold++ ) {
+            // the records of a fold are the ones at every folds records
+            int offset = ( int ) ( ( fold - first % folds + folds ) % folds );
+            long start = System.nanoTime();
+            for( int i = offset; i < chunk.length; i += folds ) {
+                TextRecord record = chunk[ i ];
+                int predicted = models[ fold ].decide( record.getText(),
+                    tokenizer ).getClassification();
+                matrix[ fold ][ 2 * record.getLabel() + predicted ]++;
+            }
+            nanos[ fold ] = System.nanoTime() - start;
+        }
+        synchronized( matrices ) {
+            for( int fold = 0; fold < folds; fold++ ) {
+                for( int cell = 0; cell < 4; cell++ ) {
+                    matrices[ fold ][ cell ] += matrix[ fold ][ cell ];
+                }
+                scoreNanos[ fold ] += nanos[ fold ];
+            }
+        }
+    }
+
+    /**
+     * opens a corpus, which the cross-validation reads twice
+     */
+    public interface Corpus {
+
+        /**
+         * opens the corpus from its beginning
+         * @return the corpus' chunks
+         * @throws IOException if the corpus can't be opened
+         */
+        ChunkReader open() throws IOException;
+    }
+
+    /**
+     * outcome of a fold: its confusion matrix and the time spent on it
+     */
+    public static final class Fold {
+
+        /**
+         * the fold's index
+         */
+        private final int index;
+
+        /**
+         * positive examples classified as positive
+         */
+        private final long truePositives;
+
+        /**
+         * negative examples classified as positive
+         */
+        private final long falsePositives;
+
+        /**
+         * positive examples classified as negative
+         */
+        private final long falseNegatives;
+
+        /**
+         * negative examples classified as negative
+         */
+        private final long trueNegatives;
+
+        /**
+         * nanoseconds spent training the fold
+         */
+        private final long trainNanos;
+
+        /**
+         * nanoseconds spent building the model of the other folds
+         */
+        private final long buildNanos;
+
+        /**
+         * nanoseconds spent scoring the fold
+         */
+        private final long scoreNanos;
+
+        /**
+         * class constructor
+         * @param index the fold's index
+         * @param truePositives positive examples classified as positive
+         * @param falsePositives negative examples classified as positive
+         * @param falseNegatives positive examples classified as negative
+         * @param trueNegatives negative examples classified as negative
+         * @param trainNanos nanoseconds spent training the fold
+         * @param buildNanos nanoseconds spent building the model
+         * @param scoreNanos nanoseconds spent scoring the fold
+         */
+        public Fold( int index, long truePositives, long falsePositives,
+            long falseNegatives, long trueNegatives, long trainNanos,
+            long buildNanos, long scoreNanos ) {
+            this.index = index;
+            this.truePositives = truePositives;
+            this.falsePositives = falsePositives;
+            this.falseNegatives = falseNegatives;
+            this.trueNegatives = trueNegatives;
+            this.trainNanos = trainNanos;
+            this.buildNanos = buildNanos;
+            this.scoreNanos = scoreNanos;
+        }
+
+        /**
+         * returns the fold's index
+         * @return the fold's index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * returns the positive examples classified as positive
+         * @return the number of true positives
+         */
+        public long getTruePositives() {
+            return truePositives;
+        }
+
+        /**
+         * returns the negative examples classified as positive
+         * @return the number of false positives
+         */
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+
+        /**
+         * returns the positive examples classified as negative
+         * @return the number of false negatives
+         */
+        public long getFalseNegatives() {
+            return falseNegatives;
+        }
+
+        /**
+         * returns the negative examples classified as negative
+         * @return the number of true negatives
+         */
+        public long getTrueNegatives() {
+            return trueNegatives;
+        }
+
+        /**
+         * returns the nanoseconds spent training the fold
+         * @return the nanoseconds spent training the fold
+         */
+        public long getTrainNanos() {
+            return trainNanos;
+        }
+
+        /**
+         * returns the nanoseconds spent building the model of the other
+         * folds by subtraction
+         * @return the nanoseconds spent building the model
+         */
+        public long getBuildNanos() {
+            return buildNanos;
+        }
+
+        /**
+         * returns the nanoseconds spent scoring the fold
+         * @return the nanoseconds spent scoring the fold
+         */
+        public long getScoreNanos() {
+            return scoreNanos;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * immutable model taken from a trained classifier. The log-ratio between the
+ * positive and negative probabilities of each word is computed once, so
+ * scoring a word is a single lookup and addition. Unknown words contribute
+ * nothing, as both of their probabilities are the same. The largest and
+ * smallest log-ratios bound what the words not scored yet may add, so
+ * decide can stop once they can't change the classification
+ * @author vitorcezar
+ */
+public final class FrozenModel implements TextClassifier {
+
+    /**
+     * mapping for the words to their ids
+     */
+    private final TermIndex terms;
+
+    /**
+     * the log-ratio of the positive and negative probabilities of each word,
+     * indexed by the word's id
+     */
+    private final double[] logRatios;
+
+    /**
+     * the logarithm of the ratio between the positive and negative priors
+     */
+    private final double priorLogOdds;
+
+    /**
+     * the largest log-ratio of a word, zero at least as unknown words have
+     * a zero log-ratio
+     */
+    private final double maxLogRatio;
+
+    /**
+     * the smallest log-ratio of a word, zero at most
+     */
+    private final double minLogRatio;
+
+    /**
+     * the largest number of words of the n-grams the model was trained with
+     */
+    private final int wordGrams;
+
+    /**
+     * the number of characters of the character n-grams the model was
+     * trained with, zero for none
+     */
+    private final int characterGrams;
+
+    /**
+     * class constructor
+     * @param terms mapping for the words to their ids
+     * @param logRatios the log-ratio of each word
+     * @param priorLogOdds the log-ratio of the priors
+     */
+    FrozenModel( TermIndex terms, double[] logRatios,
+        double priorLogOdds ) {
+        this( terms, logRatios, priorLogOdds, 1, 0 );
+    }
+
+    /**
+     * creates a model trained with n-grams
+     * @param terms mapping for the words and n-grams to their ids
+     * @param logRatios the log-ratio of each word and n-gram
+     * @param priorLogOdds the log-ratio of the priors
+     * @param wordGrams the largest number of words of an n-gram
+     * @param characterGrams the number of characters of the character
+     * n-grams, zero for none
+     */
+    private FrozenModel( TermIndex terms, double[] logRatios,
+        double priorLogOdds, int wordGrams, int characterGrams ) {
+        this.terms = terms;
+        this.logRatios = logRatios;
+        this.priorLogOdds = priorLogOdds;
+        this.wordGrams = wordGrams;
+        this.characterGrams = characterGrams;
+        double max = 0;
+        double min = 0;
+        for( double logRatio : logRatios ) {
+            max = Math.max( max, logRatio );
+            min = Math.min( min, logRatio );
+        }
+        maxLogRatio = max;
+        minLogRatio = min;
+    }
+
+    /**
+     * returns a model with the same log-ratios that splits the texts into
+     * n-grams
+     * @param wordGrams the largest number of words of an n-gram
+     * @param characterGrams the number of characters of the character
+     * n-grams, zero for none
+     * @return the model with the n-grams
+     */
+    FrozenModel withNGrams( int wordGrams, int characterGrams ) {
+        return new FrozenModel( terms, logRatios, priorLogOdds, wordGrams,
+            characterGrams );
+    }
+
+    /**
+     * returns the largest number of words of the n-grams
+     * @return one if the model only has words
+     */
+    public int wordGrams() {
+        return wordGrams;
+    }
+
+    /**
+     * returns the number of characters of the character n-grams
+     * @return zero if the model has no character n-grams
+     */
+    public int characterGrams() {
+        return characterGrams;
+    }
+
+    /**
+     * returns the number of words on the model
+     * @return the number of words on the model
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * returns an estimate of the bytes taken by the model
+     * @return the bytes taken by the model
+     */
+    public long estimatedBytes() {
+        return 8L * logRatios.length + terms.estimatedBytes();
+    }
+
+    /**
+     * indicates if the words are kept, which isn't the case of the hashed
+     * models
+     * @return true if word returns the words
+     */
+    public boolean keepsWords() {
+        return terms.keepsTerms();
+    }
+
+    /**
+     * returns the word that has the id
+     * @param id the word's id
+     * @return the word that has the id, or null if the model is hashed
+     */
+    public String word( int id ) {
+        return terms.term( id );
+    }
+
+    /**
+     * returns the log-ratio of a word's positive and negative probabilities
+     * @param id the word's id
+     * @return the log-ratio of the word's probabilities
+     */
+    public double logRatio( int id ) {
+        return logRatios[ id ];
+    }
+
+    /**
+     * returns the logarithm of the ratio between the positive and negative
+     * priors
+     * @return the log-ratio of the priors
+     */
+    public double priorLogOdds() {
+        return priorLogOdds;
+    }
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( String text ) {
+        return evaluate( text, tokenizer() );
+    }
+
+    /**
+     * returns the tokenizer of the current thread that splits the texts into
+     * the words and n-grams of the model
+     * @return the tokenizer of the model for the current thread
+     */
+    @Override
+    public Tokenizer tokenizer() {
+        return NaiveBayesClassifier.tokenizer( wordGrams, characterGrams );
+    }
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( CharSequence text,
+        Tokenizer tokenizer ) {
+        boolean metrics = Metrics.enabled();
+        long start = metrics ? System.nanoTime() : 0;
+        double logRatio = 0;
+        int unknown = 0;
+        int tokens = tokenizer.tokenize( text );
+        long tokenized = metrics ? System.nanoTime() : 0;
+        char[] chars = tokenizer.text();
+        for( int token = 0; token < tokens; token++ ) {
+            int id = terms.find( chars, tokenizer.start( token ),
+                tokenizer.length( token ), tokenizer.hash( token ) );
+            if( id != TermDictionary.NOT_FOUND ) {
+                logRatio += logRatios[ id ];
+            } else {
+                unknown++;
+            }
+        }
+        long found = metrics ? System.nanoTime() : 0;
+        ClassificationResult result =
+            ClassificationResult.fromLogOdds( priorLogOdds + logRatio );
+        if( metrics ) {
+            Metrics.get().classified( start, tokenized, found, tokens, unknown );
+        }
+        return result;
+    }
+
+    /**
+     * returns the text's classification, stopping once the words not scored
+     * yet can't change it: the positive classification is settled when the
+     * log-odds stay positive even if every remaining word has the smallest
+     * log-ratio, and the negative one when they can't become positive with
+     * the largest. As each word moves those bounds by the difference of the
+     * largest and smallest log-ratios at most, the words that must be scored
+     * before they can settle are scored without checking them. The chances
+     * of a result that exited early are the ones of that bound, and the
+     * other results are the same as the ones of evaluate. A model without
+     * finite bounds, as the one of a classifier without examples of a
+     * class, is evaluated to the last word
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's classification
+     */
+    @Override
+    public ClassificationResult decide( CharSequence text,
+        Tokenizer tokenizer ) {
+        double spread = maxLogRatio - minLogRatio;
+        if( !Double.isFinite( priorLogOdds ) || !Double.isFinite( spread ) ) {
+            return evaluate( text, tokenizer );
+        }
+        boolean metrics = Metrics.enabled();
+        long start = metrics ? System.nanoTime() : 0;
+        double logRatio = 0;
+        int unknown = 0;
+        int tokens = tokenizer.tokenize( text );
+        long tokenized = metrics ? System.nanoTime() : 0;
+        char[] chars = tokenizer.text();
+        ClassificationResult result = null;
+        int token = 0;
+        while( token < tokens ) {
+            int remaining = tokens - token;
+            double lowest = priorLogOdds + logRatio + remaining * minLogRatio;
+            double highest = priorLogOdds + logRatio + remaining * maxLogRatio;
+            if( lowest > 0 ) {
+                result = ClassificationResult.fromBound( lowest );
+                break;
+            } else if( highest <= 0 ) {
+                result = ClassificationResult.fromBound( highest );
+                break;
+            }
+            // a spread of zero makes the division NaN, which is cast to zero
+            double needed = Math.ceil( Math.min( -lowest, highest ) / spread );
+            int next = token + Math.max( 1, ( int ) Math.min( remaining,
+                needed ) );
+            for( ; token < next; token++ ) {
+                int id = terms.find( chars, tokenizer.start( token ),
+                    tokenizer.length( token ), tokenizer.hash( token ) );
+                if( id != TermDictionary.NOT_FOUND ) {
+                    logRatio += logRatios[ id ];
+                } else {
+                    unknown++;
+                }
+            }
+        }
+        long found = metrics ? System.nanoTime() : 0;
+        if( result == null ) {
+            result = ClassificationResult.fromLogOdds( priorLogOdds + logRatio );
+        }
+        if( metrics ) {
+            Metrics.get().classified( start, tokenized, found, token, unknown );
+        }
+        return result;
+    }
+}
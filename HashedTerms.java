@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * index that maps each term to one of a fixed number of buckets by its
+ * hash, the hashing trick. No term is kept, so the memory doesn't grow with
+ * the vocabulary, but different terms may share a bucket. Every term is
+ * found, as the bucket is taken from the hash alone
+ * @author vitorcezar
+ */
+public final class HashedTerms implements TermIndex {
+
+    /**
+     * number of buckets
+     */
+    private final int buckets;
+
+    /**
+     * class constructor
+     * @param buckets number of buckets
+     */
+    public HashedTerms( int buckets ) {
+        if( buckets < 1 ) {
+            throw new IllegalArgumentException( "buckets must be positive" );
+        }
+        this.buckets = buckets;
+    }
+
+    @Override
+    public int size() {
+        return buckets;
+    }
+
+    @Override
+    public boolean keepsTerms() {
+        return false;
+    }
+
+    @Override
+    public String term( int id ) {
+        return null;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return 0;
+    }
+
+    @Override
+    public int find( String term ) {
+        return bucket( TermDictionary.hash( term ) );
+    }
+
+    @Override
+    public int find( char[] chars, int offset, int length, int hash ) {
+        return bucket( hash );
+    }
+
+    @Override
+    public int add( String term ) {
+        return bucket( TermDictionary.hash( term ) );
+    }
+
+    @Override
+    public int add( char[] chars, int offset, int length, int hash ) {
+        return bucket( hash );
+    }
+
+    /**
+     * returns the bucket of a hash. The hash is scaled to the number of
+     * buckets with a multiplication, which takes its highest bits and
+     * doesn't need the number of buckets to be a power of two
+     * @param hash the term's hash
+     * @return the term's bucket
+     */
+    private int bucket( int hash ) {
+        return ( int ) ( ( ( hash & 0xFFFFFFFFL ) * buckets ) >>> 32 );
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * expands the input passed to the program into the files that are read. The
+ * input may be a file, a directory, whose files are all read, or a glob as
+ * data/2017-*.gz, where * and ? don't cross directories and ** does. The
+ * files are sorted by their paths, so dated shards are read on their order
+ * @author vitorcezar
+ */
+public class InputFiles {
+
+    /**
+     * characters that make a name a glob
+     */
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * returns the files of an input
+     * @param input the file, directory or glob
+     * @return the files sorted by their paths
+     * @throws IOException if no file is found or a directory can't be read
+     */
+    public static List< Path > expand( String input ) throws IOException {
+        List< Path > files;
+        if( isGlob( input ) ) {
+            files = glob( input );
+        } else {
+            Path path = Paths.get( input );
+            if( !Files.isDirectory( path ) ) {
+                return List.of( path );
+            }
+            try( Stream< Path > walk = Files.walk( path ) ) {
+                files = walk.filter( InputFiles::isVisibleFile ).sorted()
+                    .collect( Collectors.toList() );
+            }
+        }
+        if( files.isEmpty() ) {
+            throw new NoSuchFileException( input );
+        }
+        return files;
+    }
+
+    /**
+     * returns the files that match a glob. Only the directories below the
+     * glob's first name with a wildcard are walked, and only as deep as the
+     * glob's names unless it has **
+     * @param input the glob
+     * @return the files sorted by their paths
+     * @throws IOException if a directory can't be read
+     */
+    private static List< Path > glob( String input ) throws IOException {
+        Path pattern = Paths.get( input );
+        Path base = pattern.getRoot();
+        int depth = 0;
+        for( Path name : pattern ) {
+            if( depth > 0 || isGlob( name.toString() ) ) {
+                depth++;
+            } else {
+                base = base == null ? name : base.resolve( name );
+            }
+        }
+        if( base == null ) {
+            base = Paths.get( "" );
+        }
+        if( !Files.isDirectory( base ) ) {
+            return List.of();
+        }
+        PathMatcher matcher = pattern.getFileSystem().getPathMatcher(
+            "glob:" + input );
+        int maxDepth = input.contains( "**" ) ? Integer.MAX_VALUE : depth;
+        try( Stream< Path > walk = Files.walk( base, maxDepth ) ) {
+            return walk.filter( file -> matcher.matches( file ) &&
+                isVisibleFile( file ) ).sorted().collect( Collectors.toList() );
+        }
+    }
+
+    /**
+     * indicates if an input has wildcards
+     * @param input the input
+     * @return true if the input is a glob
+     */
+    private static boolean isGlob( String input ) {
+        for( int i = 0; i < input.length(); i++ ) {
+            if( GLOB_CHARACTERS.indexOf( input.charAt( i ) ) >= 0 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * indicates if a path is a regular file that isn't hidden
+     * @param path the path
+     * @return true if the file must be read
+     */
+    private static boolean isVisibleFile( Path path ) {
+        return Files.isRegularFile( path ) &&
+            !path.getFileName().toString().startsWith( "." );
+    }
+}
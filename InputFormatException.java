@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+
+/**
+ * exception thrown when a line of an input file isn't on the expected format
+ * @author vitorcezar
+ */
+public class InputFormatException extends IOException {
+
+    /**
+     * version of the serialized form
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the line where the error was found
+     */
+    private final int line;
+
+    /**
+     * the file where the error was found, or null if it's the only one
+     */
+    private final String path;
+
+    /**
+     * class constructor
+     * @param line the line where the error was found
+     */
+    public InputFormatException( int line ) {
+        super( "Line " + line + " is incorrect" );
+        this.line = line;
+        this.path = null;
+    }
+
+    /**
+     * creates the exception of a line of one of many input files
+     * @param path the file where the error was found
+     * @param line the line where the error was found
+     */
+    public InputFormatException( String path, int line ) {
+        super( "Line " + line + " of " + path + " is incorrect" );
+        this.line = line;
+        this.path = path;
+    }
+
+    /**
+     * returns the line where the error was found
+     * @return the line where the error was found
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * returns the file where the error was found
+     * @return the file where the error was found, or null if it's the only
+     * one
+     */
+    public String getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * histogram of latencies that many threads can record at the same time
+ * without locks. The values are kept on buckets whose width grows with the
+ * value, sixteen for each power of two, so the percentiles are within about
+ * six percent of the real ones and the memory is fixed
+ * @author vitorcezar
+ */
+public class LatencyHistogram {
+
+    /**
+     * number of bits of the value that select the bucket inside a power of
+     * two
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * number of buckets inside a power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * number of values recorded on each bucket
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * class constructor
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray( bucket( Long.MAX_VALUE ) + 1 );
+    }
+
+    /**
+     * records a latency
+     * @param nanos the latency in nanoseconds
+     */
+    public void record( long nanos ) {
+        counts.incrementAndGet( bucket( Math.max( nanos, 0 ) ) );
+    }
+
+    /**
+     * returns the number of latencies recorded
+     * @return the number of latencies recorded
+     */
+    public long count() {
+        long count = 0;
+        for( int bucket = 0; bucket < counts.length(); bucket++ ) {
+            count += counts.get( bucket );
+        }
+        return count;
+    }
+
+    /**
+     * returns a percentile of the latencies recorded
+     * @param percentile the percentile, between 0 and 100
+     * @return the highest latency of the percentile's bucket in nanoseconds,
+     * or zero if nothing was recorded
+     */
+    public long percentile( double percentile ) {
+        long[] snapshot = new long[ counts.length() ];
+        long count = 0;
+        for( int bucket = 0; bucket < snapshot.length; bucket++ ) {
+            snapshot[ bucket ] = counts.get( bucket );
+            count += snapshot[ bucket ];
+        }
+        if( count == 0 ) {
+            return 0;
+        }
+        long rank = Math.max( 1, ( long ) Math.ceil( percentile / 100 * count ) );
+        long seen = 0;
+        for( int bucket = 0; bucket < snapshot.length; bucket++ ) {
+            seen += snapshot[ bucket ];
+            if( seen >= rank ) {
+                return bucket + 1 < snapshot.length ?
+                    lowest( bucket + 1 ) - 1 : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * returns the bucket of a value
+     * @param value the value, it can't be negative
+     * @return the value's bucket
+     */
+    private static int bucket( long value ) {
+        if( value < SUB_BUCKETS ) {
+            return ( int ) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = ( int ) ( value >>> shift ) & ( SUB_BUCKETS - 1 );
+        return ( shift + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * returns the lowest value of a bucket
+     * @param bucket the bucket
+     * @return the lowest value of the bucket
+     */
+    private static long lowest( int bucket ) {
+        if( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ( long ) ( SUB_BUCKETS + subBucket ) << shift;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * classifier that keeps learning while it classifies. The writer threads
+ * train partial classifiers, one for each stripe, so they rarely wait for
+ * each other. The readers classify with an immutable model, which is
+ * replaced when the training is published: the partial classifiers are
+ * merged into the trained one, and the next model is built from the
+ * previous one, copying only the words the publication changed. A reader
+ * never waits for a writer, and as each example is added to a partial
+ * classifier as a whole, a model never has part of an example
+ * @author vitorcezar
+ */
+public class LiveClassifier implements TextClassifier, Closeable {
+
+    /**
+     * number of stripes for each processor
+     */
+    private static final int STRIPES_PER_PROCESSOR = 2;
+
+    /**
+     * the examples that weren't published yet, the writers whose threads
+     * fall on the same stripe share its classifier
+     */
+    private final NaiveBayesClassifier[] stripes;
+
+    /**
+     * the locks of the stripes
+     */
+    private final Object[] locks;
+
+    /**
+     * creates the classifiers of the stripes
+     */
+    private final Supplier< NaiveBayesClassifier > factory;
+
+    /**
+     * the published training, it's only modified while the training is
+     * published
+     */
+    private final NaiveBayesClassifier trained;
+
+    /**
+     * the model of the published training the readers classify with
+     */
+    private volatile LiveModel model;
+
+    /**
+     * publishes the training periodically, or null
+     */
+    private ScheduledExecutorService publisher;
+
+    /**
+     * where each publication is checkpointed, or null
+     */
+    private CheckpointLog checkpoints;
+
+    /**
+     * creates a classifier without training
+     */
+    public LiveClassifier() {
+        this( new NaiveBayesClassifier() );
+    }
+
+    /**
+     * creates a classifier that continues a training
+     * @param trained the classifier whose training is continued, it must
+     * not be modified anymore by the caller
+     */
+    public LiveClassifier( NaiveBayesClassifier trained ) {
+        this( trained, trained::emptyLike );
+    }
+
+    /**
+     * creates a classifier that continues a training, whose examples are
+     * added to classifiers created by a factory
+     * @param trained the classifier whose training is continued, it must
+     * not be modified anymore by the caller, nor be pruned
+     * @param factory creates the empty classifiers of the stripes, they must
+     * be created as the trained one so they can be merged into it
+     */
+    public LiveClassifier( NaiveBayesClassifier trained,
+        Supplier< NaiveBayesClassifier > factory ) {
+        if( trained.getBagOfWords().isPruned() ) {
+            throw new IllegalArgumentException( "a pruned classifier can't be trained live" );
+        }
+        this.factory = factory;
+        int count = 1;
+        while( count < Runtime.getRuntime().availableProcessors() *
+            STRIPES_PER_PROCESSOR ) {
+            count *= 2;
+        }
+        stripes = new NaiveBayesClassifier[ count ];
+        locks = new Object[ count ];
+        for( int stripe = 0; stripe < count; stripe++ ) {
+            stripes[ stripe ] = factory.get();
+            locks[ stripe ] = new Object();
+        }
+        this.trained = trained;
+        model = LiveModel.of( trained, 0 );
+    }
+
+    /**
+     * publishes the training periodically
+     * @param period time between publications
+     * @param unit unit of the period
+     */
+    public synchronized void startPublishing( long period, TimeUnit unit ) {
+        if( publisher != null ) {
+            throw new IllegalStateException( "the training is already published periodically" );
+        }
+        publisher = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "live-publisher" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        publisher.scheduleWithFixedDelay( this::publishPeriodically, period,
+            period, unit );
+    }
+
+    /**
+     * publishes the training from the publisher thread. A failed publication
+     * is reported instead of thrown, which would cancel the next ones, and
+     * its examples are published by the next one
+     */
+    private void publishPeriodically() {
+        try {
+            publish();
+        } catch( RuntimeException e ) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * stops publishing the training periodically
+     */
+    @Override
+    public synchronized void close() {
+        if( publisher != null ) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+    }
+
+    /**
+     * adds a positive training example, it's classified with once the
+     * training is published
+     * @param example example that will be added
+     */
+    public void setPositiveExample( String example ) {
+        setPositiveExample( example, trained.tokenizer() );
+    }
+
+    /**
+     * adds a positive training example, it's classified with once the
+     * training is published
+     * @param example example that will be added
+     * @param tokenizer the tokenizer that splits the example into words
+     */
+    public void setPositiveExample( CharSequence example,
+        Tokenizer tokenizer ) {
+        int stripe = stripe();
+        synchronized( locks[ stripe ] ) {
+            stripes[ stripe ].setPositiveExample( example, tokenizer );
+        }
+    }
+
+    /**
+     * adds a negative training example, it's classified with once the
+     * training is published
+     * @param example example that will be added
+     */
+    public void setNegativeExample( String example ) {
+        setNegativeExample( example, trained.tokenizer() );
+    }
+
+    /**
+     * adds a negative training example, it's classified with once the
+     * training is published
+     * @param example example that will be added
+     * @param tokenizer the tokenizer that splits the example into words
+     */
+    public void setNegativeExample( CharSequence example,
+        Tokenizer tokenizer ) {
+        int stripe = stripe();
+        synchronized( locks[ stripe ] ) {
+            stripes[ stripe ].setNegativeExample( example, tokenizer );
+        }
+    }
+
+    /**
+     * publishes the examples added until now, so the next classifications
+     * use them. The readers keep classifying with the previous model while
+     * the next one is built, which takes the time of the examples published
+     * instead of the one of the whole training. When there is a log, the
+     * examples are appended to it before they are trained, so the training
+     * is never ahead of the log; if they can't be appended, they are kept
+     * for the next publication
+     * @return the epoch of the new model
+     * @throws UncheckedIOException if the examples can't be appended to the
+     * log
+     */
+    public synchronized long publish() {
+        NaiveBayesClassifier delta = factory.get();
+        for( int stripe = 0; stripe < stripes.length; stripe++ ) {
+            NaiveBayesClassifier pending;
+            synchronized( locks[ stripe ] ) {
+                pending = stripes[ stripe ];
+                stripes[ stripe ] = factory.get();
+            }
+            delta.merge( pending );
+        }
+        if( checkpoints != null ) {
+            try {
+                checkpoint( delta );
+            } catch( UncheckedIOException e ) {
+                synchronized( locks[ 0 ] ) {
+                    stripes[ 0 ].merge( delta );
+                }
+                throw e;
+            }
+        }
+        trained.merge( delta );
+        long epoch = model.epoch() + 1;
+        model = model.next( trained, delta, epoch );
+        if( checkpoints != null ) {
+            compact();
+        }
+        return epoch;
+    }
+
+    /**
+     * checkpoints each publication from now on, appending the examples
+     * published to a log instead of saving the whole training
+     * @param checkpoints the log, opened with the training this classifier
+     * continues
+     */
+    public synchronized void checkpointTo( CheckpointLog checkpoints ) {
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * appends the published examples to the log
+     * @param delta the examples published
+     */
+    private void checkpoint( NaiveBayesClassifier delta ) {
+        if( delta.getNumberPositiveExample() +
+            delta.getNumberNegativeExample() == 0 ) {
+            return;
+        }
+        try {
+            checkpoints.append( delta );
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * compacts the log into the trained classifier if it grew as large as
+     * the base
+     */
+    private void compact() {
+        try {
+            if( checkpoints.needsCompaction() ) {
+                checkpoints.compact( trained );
+            }
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * returns the tokenizer of the trained classifier
+     * @return the tokenizer of the classifier for the current thread
+     */
+    @Override
+    public Tokenizer tokenizer() {
+        return trained.tokenizer();
+    }
+
+    /**
+     * returns the number of times the training was published, which
+     * identifies the model the readers are using
+     * @return the epoch of the current model
+     */
+    public long epoch() {
+        return model.epoch();
+    }
+
+    /**
+     * returns the epoch of the current model, which changes whenever the
+     * training is published
+     * @return the version of the classifier
+     */
+    @Override
+    public long version() {
+        return model.epoch();
+    }
+
+    /**
+     * returns the model of the published training
+     * @return the current model
+     */
+    public LiveModel model() {
+        return model;
+    }
+
+    /**
+     * saves the published training
+     * @param path the output's path
+     */
+    public synchronized void save( String path ) {
+        NaiveBayesClassifier.saveClassifier( path, trained );
+    }
+
+    /**
+     * returns the text's classification and chances with the published
+     * training
+     * @param text text that will be evaluated
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( String text ) {
+        return model.evaluate( text );
+    }
+
+    /**
+     * returns the text's classification and chances with the published
+     * training
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( CharSequence text,
+        Tokenizer tokenizer ) {
+        return model.evaluate( text, tokenizer );
+    }
+
+    /**
+     * returns the stripe of the current thread
+     * @return the stripe of the current thread
+     */
+    private int stripe() {
+        return TermDictionary.mix( ( int ) Thread.currentThread().getId() ) &
+            ( stripes.length - 1 );
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.Arrays;
+
+/**
+ * immutable model of a live classifier, which is built from the previous one
+ * when the training is published instead of being frozen again. The words
+ * are kept on runs of consecutive ids, and the new words of a publication
+ * become a new run, which is merged with the last runs while they aren't
+ * larger, so each word is copied a logarithmic number of times. The
+ * log-ratio of a word is split into a part of its own counts and a part of
+ * the vocabularies, which is the same for every word, so only the parts of
+ * the words trained are replaced, on copies of the pages that hold them
+ * @author vitorcezar
+ */
+public final class LiveModel implements TextClassifier {
+
+    /**
+     * base two logarithm of the number of word parts of a page
+     */
+    private static final int PAGE_SHIFT = 12;
+
+    /**
+     * number of word parts of a page
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    /**
+     * the words of each run, the ids of a run start at zero
+     */
+    private final TermIndex[] runs;
+
+    /**
+     * the id of the model of the first word of each run
+     */
+    private final int[] firsts;
+
+    /**
+     * the number of words of the model
+     */
+    private final int size;
+
+    /**
+     * the parts of the words' log-ratios of their own counts, indexed by
+     * the word's id, NaN for a word without occurrences. The pages are
+     * shared by the models until one of their words is trained
+     */
+    private final double[][] pages;
+
+    /**
+     * the part of the log-ratios of the vocabularies
+     */
+    private final double vocabularyPart;
+
+    /**
+     * the logarithm of the ratio between the positive and negative priors
+     */
+    private final double priorLogOdds;
+
+    /**
+     * the largest number of words of the n-grams the model was trained with
+     */
+    private final int wordGrams;
+
+    /**
+     * the number of characters of the character n-grams the model was
+     * trained with, zero for none
+     */
+    private final int characterGrams;
+
+    /**
+     * number of times the training was published before this model
+     */
+    private final long epoch;
+
+    /**
+     * class constructor
+     * @param runs the words of each run
+     * @param firsts the id of the first word of each run
+     * @param pages the pages of the word parts
+     * @param trained the classifier the model was taken from
+     * @param epoch number of times the training was published
+     */
+    private LiveModel( TermIndex[] runs, int[] firsts, double[][] pages,
+        NaiveBayesClassifier trained, long epoch ) {
+        this.runs = runs;
+        this.firsts = firsts;
+        this.pages = pages;
+        this.epoch = epoch;
+        size = trained.getBagOfWords().size();
+        vocabularyPart = trained.getBagOfWords().vocabularyPart();
+        priorLogOdds = trained.priorLogOdds();
+        wordGrams = trained.wordGrams();
+        characterGrams = trained.characterGrams();
+    }
+
+    /**
+     * takes the model of a classifier, copying every word
+     * @param trained the classifier the model is taken from
+     * @param epoch number of times the training was published
+     * @return the model of the classifier
+     */
+    public static LiveModel of( NaiveBayesClassifier trained, long epoch ) {
+        BagOfWords bag = trained.getBagOfWords();
+        double[][] pages = new double[ pageCount( bag.size() ) ][];
+        for( int page = 0; page < pages.length; page++ ) {
+            pages[ page ] = newPage();
+        }
+        for( int id = 0; id < bag.size(); id++ ) {
+            pages[ id >>> PAGE_SHIFT ][ id & ( PAGE_SIZE - 1 ) ] =
+                bag.wordPart( id );
+        }
+        return new LiveModel( new TermIndex[] { bag.frozenTerms( 0,
+            bag.size() ) }, new int[] { 0 }, pages, trained, epoch );
+    }
+
+    /**
+     * takes the model of a classifier after a delta was merged into it,
+     * sharing the words and pages of this model the delta didn't change
+     * @param trained the classifier this model was taken from, with the
+     * delta merged, it must not be pruned
+     * @param delta the examples merged into the classifier since this model
+     * was taken
+     * @param epoch number of times the training was published
+     * @return the model of the classifier
+     */
+    public LiveModel next( NaiveBayesClassifier trained,
+        NaiveBayesClassifier delta, long epoch ) {
+        BagOfWords bag = trained.getBagOfWords();
+        TermIndex[] nextRuns = runs;
+        int[] nextFirsts = firsts;
+        if( bag.size() > size ) {
+            int count = runs.length;
+            int first = size;
+            // merges the runs that aren't larger than the new words
+            while( count > 0 && first - firsts[ count - 1 ] <=
+                bag.size() - first ) {
+                count--;
+                first = firsts[ count ];
+            }
+            nextRuns = Arrays.copyOf( runs, count + 1 );
+            nextFirsts = Arrays.copyOf( firsts, count + 1 );
+            nextRuns[ count ] = bag.frozenTerms( first, bag.size() );
+            nextFirsts[ count ] = first;
+        }
+        double[][] nextPages = Arrays.copyOf( pages, pageCount( bag.size() ) );
+        boolean[] copied = new boolean[ nextPages.length ];
+        for( int page = pages.length; page < nextPages.length; page++ ) {
+            nextPages[ page ] = newPage();
+            copied[ page ] = true;
+        }
+        for( int id : bag.idsOf( delta.getBagOfWords() ) ) {
+            int page = id >>> PAGE_SHIFT;
+            if( !copied[ page ] ) {
+                nextPages[ page ] = nextPages[ page ].clone();
+                copied[ page ] = true;
+            }
+            nextPages[ page ][ id & ( PAGE_SIZE - 1 ) ] = bag.wordPart( id );
+        }
+        return new LiveModel( nextRuns, nextFirsts, nextPages, trained, epoch );
+    }
+
+    /**
+     * returns the number of pages that hold a number of words
+     * @param words the number of words
+     * @return the number of pages
+     */
+    private static int pageCount( int words ) {
+        return ( words + PAGE_SIZE - 1 ) >>> PAGE_SHIFT;
+    }
+
+    /**
+     * creates a page of words without occurrences
+     * @return the new page
+     */
+    private static double[] newPage() {
+        double[] page = new double[ PAGE_SIZE ];
+        Arrays.fill( page, Double.NaN );
+        return page;
+    }
+
+    /**
+     * returns the number of times the training was published before this
+     * model
+     * @return the epoch of the model
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * returns the number of words on the model
+     * @return the number of words on the model
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * returns the number of runs the words are kept on
+     * @return the number of runs
+     */
+    public int runs() {
+        return runs.length;
+    }
+
+    /**
+     * returns the tokenizer of the current thread that splits the texts into
+     * the words and n-grams of the model
+     * @return the tokenizer of the model for the current thread
+     */
+    @Override
+    public Tokenizer tokenizer() {
+        return NaiveBayesClassifier.tokenizer( wordGrams, characterGrams );
+    }
+
+    /**
+     * returns the epoch of the model, which changes whenever the training is
+     * published
+     * @return the version of the model
+     */
+    @Override
+    public long version() {
+        return epoch;
+    }
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( String text ) {
+        return evaluate( text, tokenizer() );
+    }
+
+    /**
+     * returns the text's classification and chances. The log-ratios of the
+     * words are the sums of their parts and the vocabulary part, so they may
+     * differ on the last bits from the ones of a frozen model
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( CharSequence text,
+        Tokenizer tokenizer ) {
+        boolean metrics = Metrics.enabled();
+        long start = metrics ? System.nanoTime() : 0;
+        double wordParts = 0;
+        int occurred = 0;
+        int unknown = 0;
+        int tokens = tokenizer.tokenize( text );
+        long tokenized = metrics ? System.nanoTime() : 0;
+        char[] chars = tokenizer.text();
+        for( int token = 0; token < tokens; token++ ) {
+            int id = find( chars, tokenizer.start( token ),
+                tokenizer.length( token ), tokenizer.hash( token ) );
+            if( id == TermDictionary.NOT_FOUND ) {
+                unknown++;
+                continue;
+            }
+            double part = pages[ id >>> PAGE_SHIFT ][ id & ( PAGE_SIZE - 1 ) ];
+            if( !Double.isNaN( part ) ) {
+                wordParts += part;
+                occurred++;
+            }
+        }
+        long found = metrics ? System.nanoTime() : 0;
+        double logRatio = occurred == 0 ? 0 :
+            wordParts + occurred * vocabularyPart;
+        ClassificationResult result =
+            ClassificationResult.fromLogOdds( priorLogOdds + logRatio );
+        if( metrics ) {
+            Metrics.get().classified( start, tokenized, found, tokens, unknown );
+        }
+        return result;
+    }
+
+    /**
+     * returns the id of a word, searching the runs from the first, which is
+     * usually the largest
+     * @param chars the characters that have the word
+     * @param offset the index of the word's first character
+     * @param length the number of characters of the word
+     * @param hash the word's hash
+     * @return the word's id or TermDictionary.NOT_FOUND if it's unknown
+     */
+    private int find( char[] chars, int offset, int length, int hash ) {
+        for( int run = 0; run < runs.length; run++ ) {
+            int id = runs[ run ].find( chars, offset, length, hash );
+            if( id != TermDictionary.NOT_FOUND ) {
+                return firsts[ run ] + id;
+            }
+        }
+        return TermDictionary.NOT_FOUND;
+    }
+}
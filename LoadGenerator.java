@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * load generator of a ClassificationServer. A number of clients post the
+ * lines of a classification file to the server for some time, each request
+ * with a few lines, and the throughput and the latency percentiles seen by
+ * the clients are printed together with the statistics of the server
+ * @author vitorcezar
+ */
+public class LoadGenerator {
+
+    /**
+     * the server's address, as http://localhost:8080
+     */
+    private final String address;
+
+    /**
+     * the bodies of the requests, each with a few lines of the file
+     */
+    private final String[] bodies;
+
+    /**
+     * number of lines of each body
+     */
+    private final int[] bodyLines;
+
+    /**
+     * the client shared by the clients' threads
+     */
+    private final HttpClient client;
+
+    /**
+     * latency of the requests
+     */
+    private final LatencyHistogram latencies;
+
+    /**
+     * number of requests answered
+     */
+    private final LongAdder requests;
+
+    /**
+     * number of lines classified
+     */
+    private final LongAdder texts;
+
+    /**
+     * number of requests that failed
+     */
+    private final LongAdder failures;
+
+    /**
+     * class constructor
+     * @param address the server's address, as http://localhost:8080
+     * @param path the classification file whose lines are posted
+     * @param linesPerRequest number of lines on each request
+     * @throws IOException if the file can't be read
+     */
+    public LoadGenerator( String address, String path, int linesPerRequest )
+        throws IOException {
+        List< String > lines = Files.readAllLines( Paths.get( path ),
+            StandardCharsets.UTF_8 );
+        lines.removeIf( String::isBlank );
+        if( lines.isEmpty() ) {
+            throw new IOException( "no lines on " + path );
+        }
+        bodies = new String[ ( lines.size() + linesPerRequest - 1 ) /
+            linesPerRequest ];
+        bodyLines = new int[ bodies.length ];
+        for( int i = 0; i < bodies.length; i++ ) {
+            List< String > body = lines.subList( i * linesPerRequest,
+                Math.min( lines.size(), ( i + 1 ) * linesPerRequest ) );
+            bodies[ i ] = String.join( "\n", body ) + "\n";
+            bodyLines[ i ] = body.size();
+        }
+        this.address = address;
+        // the server only speaks HTTP/1.1, so no upgrade is attempted
+        client = HttpClient.newBuilder().version( HttpClient.Version.HTTP_1_1 )
+            .build();
+        latencies = new LatencyHistogram();
+        requests = new LongAdder();
+        texts = new LongAdder();
+        failures = new LongAdder();
+    }
+
+    /**
+     * posts requests from a number of clients for some time, printing the
+     * results
+     * @param clients number of clients posting requests at the same time
+     * @param seconds how long the requests are posted
+     * @throws IOException if the statistics of the server can't be read
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void run( int clients, int seconds ) throws IOException,
+        InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] threads = new Thread[ clients ];
+        for( int i = 0; i < clients; i++ ) {
+            int first = i;
+            threads[ i ] = new Thread( () -> post( first, deadline ),
+                "load-client-" + i );
+            threads[ i ].start();
+        }
+        for( Thread thread : threads ) {
+            thread.join();
+        }
+        System.out.printf( Locale.ROOT, "client requests %d (%d failed)%n" +
+            "client throughput %.1f texts/s%nclient p50 %.3f ms%n" +
+            "client p99 %.3f ms%n", requests.sum(), failures.sum(),
+            texts.sum() / ( double ) seconds,
+            latencies.percentile( 50 ) / 1e6, latencies.percentile( 99 ) / 1e6 );
+        HttpResponse< String > stats = client.send( HttpRequest.newBuilder(
+            URI.create( address + "/stats" ) ).GET().build(),
+            HttpResponse.BodyHandlers.ofString() );
+        for( String line : stats.body().split( "\n" ) ) {
+            System.out.println( "server " + line );
+        }
+    }
+
+    /**
+     * posts requests until the deadline
+     * @param first the first request posted
+     * @param deadline when the requests stop, in nanoseconds
+     */
+    private void post( int first, long deadline ) {
+        URI uri = URI.create( address + "/classify" );
+        for( int i = first; System.nanoTime() < deadline; i++ ) {
+            int body = i % bodies.length;
+            HttpRequest request = HttpRequest.newBuilder( uri ).POST(
+                HttpRequest.BodyPublishers.ofString( bodies[ body ] ) ).build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse< String > response = client.send( request,
+                    HttpResponse.BodyHandlers.ofString() );
+                if( response.statusCode() == 200 ) {
+                    latencies.record( System.nanoTime() - start );
+                    requests.increment();
+                    texts.add( bodyLines[ body ] );
+                } else {
+                    failures.increment();
+                }
+            } catch( IOException e ) {
+                failures.increment();
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * read-only classifier that looks the words up directly on a memory-mapped
+ * file. Opening it doesn't read the words, so it starts at once, and the
+ * processes that map the same file share its pages on the operating system
+ * cache. The file has a header with the number of examples and words of each
+ * class, followed by an open addressing table whose slots keep the offsets of
+ * the word records. Each record has the word's hash, the log-ratio of its
+ * positive and negative probabilities and its characters, as the model is
+ * written from a frozen one. As a single mapping is used, the file can't be
+ * larger than 2 GB
+ * @author vitorcezar
+ */
+public class MappedModel implements TextClassifier {
+
+    /**
+     * number that identifies a mapped model file, "NBCM" in ASCII
+     */
+    public static final int MAGIC = 0x4E42434D;
+
+    /**
+     * the version of the format written
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * offset of the slots on the file
+     */
+    private static final int SLOTS_OFFSET = 24;
+
+    /**
+     * number of bytes of a record before the word's characters
+     */
+    private static final int RECORD_HEADER = 16;
+
+    /**
+     * the slots are twice the number of words, at least
+     */
+    private static final int SLOTS_PER_WORD = 2;
+
+    /**
+     * the file's contents
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * number of slots on the table, it's a power of two
+     */
+    private final int slotCount;
+
+    /**
+     * the logarithm of the ratio between the positive and negative priors
+     */
+    private final double priorLogOdds;
+
+    /**
+     * class constructor
+     * @param buffer the file's contents
+     * @throws IOException if the contents aren't a mapped model
+     */
+    private MappedModel( ByteBuffer buffer ) throws IOException {
+        if( buffer.capacity() < SLOTS_OFFSET ||
+            buffer.getInt( 0 ) != MAGIC ) {
+            throw new IOException( "not a mapped model file" );
+        }
+        if( buffer.getInt( 4 ) != VERSION ) {
+            throw new IOException( "unsupported mapped model version " +
+                buffer.getInt( 4 ) );
+        }
+        this.buffer = buffer;
+        priorLogOdds = buffer.getDouble( 8 );
+        slotCount = buffer.getInt( 20 );
+        if( Integer.bitCount( slotCount ) != 1 ||
+            SLOTS_OFFSET + 4L * slotCount > buffer.capacity() ) {
+            throw new IOException( "corrupted mapped model file" );
+        }
+    }
+
+    /**
+     * maps a model file
+     * @param path the path of the model
+     * @return the mapped model
+     * @throws IOException if the model can't be mapped
+     */
+    public static MappedModel open( String path ) throws IOException {
+        try( FileChannel channel = FileChannel.open( Paths.get( path ),
+            StandardOpenOption.READ ) ) {
+            if( channel.size() > Integer.MAX_VALUE ) {
+                throw new IOException( "mapped model larger than 2 GB" );
+            }
+            return new MappedModel( channel.map( FileChannel.MapMode.READ_ONLY,
+                0, channel.size() ) );
+        }
+    }
+
+    /**
+     * writes a frozen model as a model file that can be mapped
+     * @param path the path of the model
+     * @param model the model that will be written, it must keep its words
+     * and have no n-grams
+     * @throws IOException if the model can't be written
+     */
+    public static void write( String path, FrozenModel model )
+        throws IOException {
+        if( !model.keepsWords() ) {
+            throw new IllegalArgumentException( "a hashed model can't be mapped" );
+        }
+        if( model.wordGrams() != 1 || model.characterGrams() != 0 ) {
+            throw new IllegalArgumentException( "a model with n-grams can't be mapped" );
+        }
+        int size = model.size();
+        int slotCount = 1;
+        while( slotCount < size * SLOTS_PER_WORD ) {
+            slotCount *= 2;
+        }
+
+        // the offsets of the records are known before they are written
+        int[] slots = new int[ slotCount ];
+        int mask = slotCount - 1;
+        long offset = SLOTS_OFFSET + 4L * slotCount;
+        for( int id = 0; id < size; id++ ) {
+            String word = model.word( id );
+            if( offset > Integer.MAX_VALUE ) {
+                throw new IOException( "mapped model larger than 2 GB" );
+            }
+            int slot = TermDictionary.hash( word ) & mask;
+            while( slots[ slot ] != 0 ) {
+                slot = ( slot + 1 ) & mask;
+            }
+            slots[ slot ] = ( int ) offset;
+            offset += RECORD_HEADER + 2L * word.length();
+        }
+        if( offset > Integer.MAX_VALUE ) {
+            throw new IOException( "mapped model larger than 2 GB" );
+        }
+
+        try( DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream( Channels.newOutputStream(
+            FileChannel.open( Paths.get( path ), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ),
+            1 << 16 ) ) ) {
+            output.writeInt( MAGIC );
+            output.writeInt( VERSION );
+            output.writeDouble( model.priorLogOdds() );
+            output.writeInt( size );
+            output.writeInt( slotCount );
+            for( int slot : slots ) {
+                output.writeInt( slot );
+            }
+            for( int id = 0; id < size; id++ ) {
+                String word = model.word( id );
+                output.writeInt( TermDictionary.hash( word ) );
+                output.writeDouble( model.logRatio( id ) );
+                output.writeInt( word.length() );
+                output.writeChars( word );
+            }
+        }
+    }
+
+    /**
+     * returns the number of words on the model
+     * @return the number of words on the model
+     */
+    public int size() {
+        return buffer.getInt( 16 );
+    }
+
+    /**
+     * returns the bytes of the mapped file, which are kept by the operating
+     * system instead of the heap
+     * @return the bytes of the mapped file
+     */
+    public long estimatedBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( String text ) {
+        return evaluate( text, WordTokenizer.local() );
+    }
+
+    /**
+     * returns the text's classification and chances, reading only the
+     * records of its words
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( CharSequence text,
+        Tokenizer tokenizer ) {
+        boolean metrics = Metrics.enabled();
+        long start = metrics ? System.nanoTime() : 0;
+        double logRatio = 0;
+        int unknown = 0;
+        int tokens = tokenizer.tokenize( text );
+        long tokenized = metrics ? System.nanoTime() : 0;
+        for( int token = 0; token < tokens; token++ ) {
+            int record = find( tokenizer, token );
+            if( record != 0 ) {
+                logRatio += buffer.getDouble( record + 4 );
+            } else {
+                unknown++;
+            }
+        }
+        long found = metrics ? System.nanoTime() : 0;
+        ClassificationResult result =
+            ClassificationResult.fromLogOdds( priorLogOdds + logRatio );
+        if( metrics ) {
+            Metrics.get().classified( start, tokenized, found, tokens, unknown );
+        }
+        return result;
+    }
+
+    /**
+     * returns the offset of the record of a token
+     * @param tokenizer the tokenizer that has the word
+     * @param token the word's index on the tokenizer
+     * @return the offset of the word's record, or zero if it's unknown
+     */
+    private int find( Tokenizer tokenizer, int token ) {
+        int hash = tokenizer.hash( token );
+        int mask = slotCount - 1;
+        for( int slot = hash & mask; ; slot = ( slot + 1 ) & mask ) {
+            int record = buffer.getInt( SLOTS_OFFSET + 4 * slot );
+            if( record == 0 || ( buffer.getInt( record ) == hash &&
+                matches( record, tokenizer.text(), tokenizer.start( token ),
+                tokenizer.length( token ) ) ) ) {
+                return record;
+            }
+        }
+    }
+
+    /**
+     * indicates if a record is the one of a word
+     * @param record the offset of the record
+     * @param chars the buffer with the word's characters
+     * @param offset position of the word on the buffer
+     * @param length number of characters of the word
+     * @return true if the record is the one of the word
+     */
+    private boolean matches( int record, char[] chars, int offset,
+        int length ) {
+        if( buffer.getInt( record + 12 ) != length ) {
+            return false;
+        }
+        int characters = record + RECORD_HEADER;
+        for( int i = 0; i < length; i++ ) {
+            if( buffer.getChar( characters + 2 * i ) != chars[ offset + i ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
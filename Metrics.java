@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * counters of the training and classification hot paths. They are striped
+ * adders, so the worker threads don't contend on them, and they are only
+ * updated once per text while the metrics are enabled, so the hot paths
+ * only pay a volatile read when they are disabled
+ * @author vitorcezar
+ */
+public final class Metrics implements MetricsMBean {
+
+    /**
+     * name under which the metrics are registered on the platform MBean
+     * server
+     */
+    public static final String OBJECT_NAME = "NaiveBayes:type=Metrics";
+
+    /**
+     * the metrics of the process
+     */
+    private static final Metrics METRICS = new Metrics();
+
+    /**
+     * indicates if the hot paths must update the metrics
+     */
+    private static volatile boolean enabled = false;
+
+    /**
+     * the phases whose time is measured
+     */
+    public enum Phase { PARSE, TOKENIZE, LOOKUP, SCORE, WRITE }
+
+    /**
+     * nanoseconds spent on each phase
+     */
+    private final LongAdder[] nanos;
+
+    /**
+     * number of training examples added
+     */
+    private final LongAdder documentsTrained = new LongAdder();
+
+    /**
+     * number of texts classified
+     */
+    private final LongAdder documentsClassified = new LongAdder();
+
+    /**
+     * number of words read
+     */
+    private final LongAdder tokens = new LongAdder();
+
+    /**
+     * number of words of the classified texts
+     */
+    private final LongAdder classifiedTokens = new LongAdder();
+
+    /**
+     * number of classified words that the model doesn't know
+     */
+    private final LongAdder unknownTokens = new LongAdder();
+
+    /**
+     * returns the vocabulary size of the watched model
+     */
+    private volatile IntSupplier vocabulary = () -> 0;
+
+    /**
+     * returns the bytes taken by the watched model
+     */
+    private volatile LongSupplier modelBytes = () -> 0;
+
+    /**
+     * the thread that prints the metrics periodically
+     */
+    private ScheduledExecutorService dumper;
+
+    /**
+     * the metrics are only created by the class
+     */
+    private Metrics() {
+        nanos = new LongAdder[ Phase.values().length ];
+        for( int phase = 0; phase < nanos.length; phase++ ) {
+            nanos[ phase ] = new LongAdder();
+        }
+    }
+
+    /**
+     * returns the metrics of the process
+     * @return the metrics of the process
+     */
+    public static Metrics get() {
+        return METRICS;
+    }
+
+    /**
+     * indicates if the hot paths must update the metrics
+     * @return true if the metrics are enabled
+     */
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * makes the hot paths update the metrics and registers them on the
+     * platform MBean server, so they can be read with jconsole or any JMX
+     * client
+     */
+    public static synchronized void enable() {
+        if( enabled ) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( METRICS,
+                new ObjectName( OBJECT_NAME ) );
+        } catch( JMException e ) {
+            throw new IllegalStateException( "the metrics can't be registered", e );
+        }
+        enabled = true;
+    }
+
+    /**
+     * sets the model whose vocabulary and size are reported
+     * @param vocabulary returns the number of words of the model
+     * @param modelBytes returns an estimate of the bytes taken by the model
+     */
+    public void watch( IntSupplier vocabulary, LongSupplier modelBytes ) {
+        this.vocabulary = vocabulary;
+        this.modelBytes = modelBytes;
+    }
+
+    /**
+     * adds the time spent on a phase
+     * @param phase the phase
+     * @param start the value of System.nanoTime when the phase started
+     */
+    public void addTime( Phase phase, long start ) {
+        nanos[ phase.ordinal() ].add( System.nanoTime() - start );
+    }
+
+    /**
+     * adds a training example, whose counts were updated when this is called
+     * @param start the value of System.nanoTime when the example was taken
+     * @param tokenized the value of System.nanoTime when it was tokenized
+     * @param words the number of words of the example
+     */
+    public void trained( long start, long tokenized, int words ) {
+        long end = System.nanoTime();
+        nanos[ Phase.TOKENIZE.ordinal() ].add( tokenized - start );
+        nanos[ Phase.LOOKUP.ordinal() ].add( end - tokenized );
+        tokens.add( words );
+        documentsTrained.increment();
+    }
+
+    /**
+     * adds a classified text, whose result was computed when this is called
+     * @param start the value of System.nanoTime when the text was taken
+     * @param tokenized the value of System.nanoTime when it was tokenized
+     * @param found the value of System.nanoTime when its words were looked up
+     * @param words the number of words of the text
+     * @param unknown the number of words the model doesn't know
+     */
+    public void classified( long start, long tokenized, long found, int words,
+        int unknown ) {
+        long end = System.nanoTime();
+        nanos[ Phase.TOKENIZE.ordinal() ].add( tokenized - start );
+        nanos[ Phase.LOOKUP.ordinal() ].add( found - tokenized );
+        nanos[ Phase.SCORE.ordinal() ].add( end - found );
+        tokens.add( words );
+        classifiedTokens.add( words );
+        unknownTokens.add( unknown );
+        documentsClassified.increment();
+    }
+
+    @Override
+    public long getDocumentsTrained() {
+        return documentsTrained.sum();
+    }
+
+    @Override
+    public long getDocumentsClassified() {
+        return documentsClassified.sum();
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    @Override
+    public long getClassifiedTokens() {
+        return classifiedTokens.sum();
+    }
+
+    @Override
+    public long getUnknownTokens() {
+        return unknownTokens.sum();
+    }
+
+    @Override
+    public double getUnknownTokenRate() {
+        long classified = getClassifiedTokens();
+        return classified == 0 ? 0 : ( double ) getUnknownTokens() / classified;
+    }
+
+    @Override
+    public long getParseNanos() {
+        return nanos( Phase.PARSE );
+    }
+
+    @Override
+    public long getTokenizeNanos() {
+        return nanos( Phase.TOKENIZE );
+    }
+
+    @Override
+    public long getLookupNanos() {
+        return nanos( Phase.LOOKUP );
+    }
+
+    @Override
+    public long getScoreNanos() {
+        return nanos( Phase.SCORE );
+    }
+
+    @Override
+    public long getWriteNanos() {
+        return nanos( Phase.WRITE );
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return vocabulary.getAsInt();
+    }
+
+    @Override
+    public long getModelBytes() {
+        return modelBytes.getAsLong();
+    }
+
+    @Override
+    public void reset() {
+        for( LongAdder adder : nanos ) {
+            adder.reset();
+        }
+        documentsTrained.reset();
+        documentsClassified.reset();
+        tokens.reset();
+        classifiedTokens.reset();
+        unknownTokens.reset();
+    }
+
+    /**
+     * returns the nanoseconds spent on a phase
+     * @param phase the phase
+     * @return the nanoseconds spent on the phase
+     */
+    public long nanos( Phase phase ) {
+        return nanos[ phase.ordinal() ].sum();
+    }
+
+    /**
+     * prints the metrics periodically, with the throughput since the last
+     * print. The printing stops when the process ends
+     * @param period time between two prints
+     * @param unit unit of the period
+     * @param out where the metrics are printed
+     */
+    public synchronized void startDumping( long period, TimeUnit unit,
+        PrintStream out ) {
+        if( dumper != null ) {
+            throw new IllegalStateException( "the metrics are already printed periodically" );
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "metrics-dumper" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        long[] last = { System.nanoTime(), 0, 0 };
+        dumper.scheduleAtFixedRate( () -> {
+            long now = System.nanoTime();
+            long documents = getDocumentsTrained() + getDocumentsClassified();
+            long words = getTokens();
+            double seconds = ( now - last[ 0 ] ) / 1e9;
+            out.print( report( ( documents - last[ 1 ] ) / seconds,
+                ( words - last[ 2 ] ) / seconds ) );
+            out.flush();
+            last[ 0 ] = now;
+            last[ 1 ] = documents;
+            last[ 2 ] = words;
+        }, period, period, unit );
+    }
+
+    /**
+     * returns the metrics as text
+     * @param documentsPerSecond documents trained or classified per second
+     * @param tokensPerSecond words read per second
+     * @return the metrics as text
+     */
+    public String report( double documentsPerSecond, double tokensPerSecond ) {
+        StringBuilder report = new StringBuilder();
+        report.append( String.format( "metrics documents trained %d classified %d (%.0f/s)%n",
+            getDocumentsTrained(), getDocumentsClassified(), documentsPerSecond ) );
+        report.append( String.format( "metrics tokens %d (%.0f/s) unknown %d (%.2f%%)%n",
+            getTokens(), tokensPerSecond, getUnknownTokens(),
+            100 * getUnknownTokenRate() ) );
+        report.append( String.format( "metrics model words %d bytes %d%n",
+            getVocabularySize(), getModelBytes() ) );
+        report.append( "metrics ms" );
+        for( Phase phase : Phase.values() ) {
+            report.append( ' ' ).append( phase.name().toLowerCase() )
+                .append( ' ' ).append( nanos( phase ) / 1000000 );
+        }
+        return report.append( System.lineSeparator() ).toString();
+    }
+}
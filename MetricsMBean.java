@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * attributes of the metrics exported through JMX
+ * @author vitorcezar
+ */
+public interface MetricsMBean {
+
+    /**
+     * returns the number of training examples added
+     * @return the number of training examples added
+     */
+    long getDocumentsTrained();
+
+    /**
+     * returns the number of texts classified
+     * @return the number of texts classified
+     */
+    long getDocumentsClassified();
+
+    /**
+     * returns the number of words read while training and classifying
+     * @return the number of words read
+     */
+    long getTokens();
+
+    /**
+     * returns the number of words read while classifying
+     * @return the number of classified words
+     */
+    long getClassifiedTokens();
+
+    /**
+     * returns the number of classified words that the model doesn't know
+     * @return the number of unknown words
+     */
+    long getUnknownTokens();
+
+    /**
+     * returns the fraction of the classified words that the model doesn't
+     * know
+     * @return the fraction of unknown words
+     */
+    double getUnknownTokenRate();
+
+    /**
+     * returns the nanoseconds spent reading and parsing the input lines
+     * @return the nanoseconds spent parsing
+     */
+    long getParseNanos();
+
+    /**
+     * returns the nanoseconds spent splitting the texts into words
+     * @return the nanoseconds spent tokenizing
+     */
+    long getTokenizeNanos();
+
+    /**
+     * returns the nanoseconds spent looking the words up and updating or
+     * adding their counts
+     * @return the nanoseconds spent looking the words up
+     */
+    long getLookupNanos();
+
+    /**
+     * returns the nanoseconds spent turning the log-odds into chances
+     * @return the nanoseconds spent scoring
+     */
+    long getScoreNanos();
+
+    /**
+     * returns the nanoseconds spent writing the classifications
+     * @return the nanoseconds spent writing
+     */
+    long getWriteNanos();
+
+    /**
+     * returns the number of words of the watched model
+     * @return the vocabulary size, or zero if no model is watched
+     */
+    int getVocabularySize();
+
+    /**
+     * returns an estimate of the bytes taken by the watched model
+     * @return the bytes taken by the model, or zero if no model is watched
+     */
+    long getModelBytes();
+
+    /**
+     * sets every counter to zero
+     */
+    void reset();
+}
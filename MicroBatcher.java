@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * coalesces the texts of concurrent requests into batches that are scored
+ * together by a few scoring threads. A scoring thread takes every request
+ * waiting on the queue, up to a number of texts, and waits a little for
+ * more if the batch is small, so the requests share the hand-off between
+ * threads and the scoring loop runs over many texts at once
+ * @author vitorcezar
+ */
+public class MicroBatcher {
+
+    /**
+     * a request whose texts weren't scored yet
+     */
+    private static final class Request {
+
+        /**
+         * the texts that will be classified
+         */
+        private final String[] texts;
+
+        /**
+         * completed with the results of the texts
+         */
+        private final CompletableFuture< ClassificationResult[] > results;
+
+        /**
+         * class constructor
+         * @param texts the texts that will be classified
+         */
+        private Request( String[] texts ) {
+            this.texts = texts;
+            results = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * the classifier that scores the texts
+     */
+    private final TextClassifier classifier;
+
+    /**
+     * maximum number of texts on a batch
+     */
+    private final int maxBatch;
+
+    /**
+     * how long a small batch waits for more requests, in nanoseconds
+     */
+    private final long maxDelay;
+
+    /**
+     * the requests that weren't taken by a scoring thread
+     */
+    private final BlockingQueue< Request > queue;
+
+    /**
+     * the scoring threads
+     */
+    private final Thread[] scorers;
+
+    /**
+     * class constructor, the scoring threads are started at once
+     * @param classifier the classifier that scores the texts
+     * @param threads number of scoring threads
+     * @param maxBatch maximum number of texts on a batch
+     * @param maxDelay how long a small batch waits for more requests, in
+     * microseconds
+     */
+    public MicroBatcher( TextClassifier classifier, int threads, int maxBatch,
+        long maxDelay ) {
+        if( threads < 1 || maxBatch < 1 || maxDelay < 0 ) {
+            throw new IllegalArgumentException( "invalid batching parameters" );
+        }
+        this.classifier = classifier;
+        this.maxBatch = maxBatch;
+        this.maxDelay = TimeUnit.MICROSECONDS.toNanos( maxDelay );
+        queue = new LinkedBlockingQueue<>();
+        scorers = new Thread[ threads ];
+        for( int i = 0; i < threads; i++ ) {
+            scorers[ i ] = new Thread( this::score, "batch-scorer-" + i );
+            scorers[ i ].setDaemon( true );
+            scorers[ i ].start();
+        }
+    }
+
+    /**
+     * submits texts to be classified
+     * @param texts the texts that will be classified
+     * @return completed with the result of each text, on the same order
+     */
+    public CompletableFuture< ClassificationResult[] > submit(
+        String[] texts ) {
+        Request request = new Request( texts );
+        queue.add( request );
+        return request.results;
+    }
+
+    /**
+     * stops the scoring threads, the requests that weren't scored are
+     * cancelled
+     */
+    public void close() {
+        for( Thread scorer : scorers ) {
+            scorer.interrupt();
+        }
+        Request request;
+        while( ( request = queue.poll() ) != null ) {
+            request.results.cancel( false );
+        }
+    }
+
+    /**
+     * takes batches from the queue and scores them, until the thread is
+     * interrupted
+     */
+    private void score() {
+        List< Request > batch = new ArrayList<>();
+        try {
+            while( true ) {
+                batch.clear();
+                Request first = queue.take();
+                batch.add( first );
+                int texts = first.texts.length;
+                long deadline = System.nanoTime() + maxDelay;
+                while( texts < maxBatch ) {
+                    Request next = queue.poll();
+                    if( next == null ) {
+                        long remaining = deadline - System.nanoTime();
+                        if( remaining <= 0 ) {
+                            break;
+                        }
+                        next = queue.poll( remaining, TimeUnit.NANOSECONDS );
+                        if( next == null ) {
+                            break;
+                        }
+                    }
+                    batch.add( next );
+                    texts += next.texts.length;
+                }
+                score( batch );
+            }
+        } catch( InterruptedException e ) {
+            for( Request request : batch ) {
+                request.results.cancel( false );
+            }
+        }
+    }
+
+    /**
+     * scores the texts of a batch completing its requests
+     * @param batch the requests of the batch
+     */
+    private void score( List< Request > batch ) {
+        Tokenizer tokenizer = classifier.tokenizer();
+        for( Request request : batch ) {
+            try {
+                ClassificationResult[] results =
+                    new ClassificationResult[ request.texts.length ];
+                for( int i = 0; i < results.length; i++ ) {
+                    results[ i ] = classifier.evaluate( request.texts[ i ],
+                        tokenizer );
+                }
+                request.results.complete( results );
+            } catch( RuntimeException e ) {
+                request.results.completeExceptionally( e );
+            }
+        }
+    }
+}
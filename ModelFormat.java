@@ -0,0 +1,617 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * binary format of the saved classifiers. The file starts with a header made
+ * of the magic number, the format version and the flags, followed by the
+ * body, which may be compressed with DEFLATE. The body has the number of
+ * examples and words of each class and the word table, where each word is
+ * kept as UTF-8 followed by its counts. A hashed classifier has no words, its
+ * table has the number of buckets followed by the buckets that were used,
+ * each kept as the distance from the previous one followed by its counts.
+ * Every number on the body is written as a varint, so small counts take a
+ * single byte. A multi-class classifier has its own flag, and its body has
+ * the number of classes followed by the examples and vocabulary of each
+ * class and the word table, where each word is followed by its count on
+ * every class
+ * @author vitorcezar
+ */
+public final class ModelFormat {
+
+    /**
+     * number that identifies a classifier file, "NBCF" in ASCII
+     */
+    public static final int MAGIC = 0x4E424346;
+
+    /**
+     * the version of the format written
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * flag indicating that the body is compressed
+     */
+    private static final int FLAG_DEFLATE = 1;
+
+    /**
+     * flag indicating that the classifier is hashed
+     */
+    private static final int FLAG_HASHED = 2;
+
+    /**
+     * flag indicating that the classifier counts n-grams, whose sizes start
+     * the body
+     */
+    private static final int FLAG_NGRAMS = 4;
+
+    /**
+     * flag indicating that the classifier has any number of classes
+     */
+    private static final int FLAG_MULTICLASS = 8;
+
+    /**
+     * size of the buffers used on the body
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * the class only has static methods
+     */
+    private ModelFormat() {
+    }
+
+    /**
+     * writes a classifier on a stream, which isn't closed
+     * @param classifier the classifier that will be written
+     * @param outputStream where the classifier will be written
+     * @param compress indicates if the body must be compressed
+     * @throws IOException if the classifier can't be written
+     */
+    public static void write( NaiveBayesClassifier classifier,
+        OutputStream outputStream, boolean compress ) throws IOException {
+        DataOutputStream header = new DataOutputStream( outputStream );
+        header.writeInt( MAGIC );
+        header.writeByte( VERSION );
+        BagOfWords bagOfWords = classifier.getBagOfWords();
+        boolean nGrams = classifier.wordGrams() != 1 ||
+            classifier.characterGrams() != 0;
+        header.writeByte( ( compress ? FLAG_DEFLATE : 0 ) |
+            ( bagOfWords.keepsWords() ? 0 : FLAG_HASHED ) |
+            ( nGrams ? FLAG_NGRAMS : 0 ) );
+        header.flush();
+
+        Deflater deflater = null;
+        OutputStream body = outputStream;
+        if( compress ) {
+            deflater = new Deflater( Deflater.BEST_SPEED );
+            body = new DeflaterOutputStream( outputStream, deflater,
+                BUFFER_SIZE );
+        }
+        try {
+            VarIntOutput output = new VarIntOutput( body );
+            if( nGrams ) {
+                output.writeVarLong( classifier.wordGrams() );
+                output.writeVarLong( classifier.characterGrams() );
+            }
+            output.writeVarLong( classifier.getNumberPositiveExample() );
+            output.writeVarLong( classifier.getNumberNegativeExample() );
+            output.writeVarLong( bagOfWords.positiveVocabulary() );
+            output.writeVarLong( bagOfWords.negativeVocabulary() );
+            if( bagOfWords.keepsWords() ) {
+                writeWords( bagOfWords, output );
+            } else {
+                writeBuckets( bagOfWords, output );
+            }
+            output.flush();
+            if( compress ) {
+                ( ( DeflaterOutputStream ) body ).finish();
+            }
+            outputStream.flush();
+        } finally {
+            if( deflater != null ) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * writes a multi-class classifier on a stream, which isn't closed
+     * @param classifier the classifier that will be written
+     * @param outputStream where the classifier will be written
+     * @param compress indicates if the body must be compressed
+     * @throws IOException if the classifier can't be written
+     */
+    public static void write( MultiClassClassifier classifier,
+        OutputStream outputStream, boolean compress ) throws IOException {
+        DataOutputStream header = new DataOutputStream( outputStream );
+        header.writeInt( MAGIC );
+        header.writeByte( VERSION );
+        header.writeByte( ( compress ? FLAG_DEFLATE : 0 ) | FLAG_MULTICLASS );
+        header.flush();
+
+        Deflater deflater = null;
+        OutputStream body = outputStream;
+        if( compress ) {
+            deflater = new Deflater( Deflater.BEST_SPEED );
+            body = new DeflaterOutputStream( outputStream, deflater,
+                BUFFER_SIZE );
+        }
+        try {
+            VarIntOutput output = new VarIntOutput( body );
+            MultiClassBagOfWords bagOfWords = classifier.getBagOfWords();
+            int classes = classifier.classes();
+            output.writeVarLong( classes );
+            for( int category = 0; category < classes; category++ ) {
+                output.writeVarLong( classifier.getNumberExample( category ) );
+                output.writeVarLong( bagOfWords.vocabulary( category ) );
+            }
+            output.writeVarLong( bagOfWords.size() );
+            for( int id = 0; id < bagOfWords.size(); id++ ) {
+                byte[] word = bagOfWords.word( id ).getBytes(
+                    StandardCharsets.UTF_8 );
+                output.writeVarLong( word.length );
+                output.write( word );
+                for( int category = 0; category < classes; category++ ) {
+                    output.writeVarLong( bagOfWords.count( id, category ) );
+                }
+            }
+            output.flush();
+            if( compress ) {
+                ( ( DeflaterOutputStream ) body ).finish();
+            }
+            outputStream.flush();
+        } finally {
+            if( deflater != null ) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * writes the word table of a classifier
+     * @param bagOfWords the classifier's words information
+     * @param output where the table will be written
+     * @throws IOException if the table can't be written
+     */
+    private static void writeWords( BagOfWords bagOfWords,
+        VarIntOutput output ) throws IOException {
+        output.writeVarLong( bagOfWords.size() );
+        for( int id = 0; id < bagOfWords.size(); id++ ) {
+            byte[] word = bagOfWords.word( id ).getBytes(
+                StandardCharsets.UTF_8 );
+            output.writeVarLong( word.length );
+            output.write( word );
+            output.writeVarLong( bagOfWords.positiveCount( id ) );
+            output.writeVarLong( bagOfWords.negativeCount( id ) );
+        }
+    }
+
+    /**
+     * writes the bucket table of a hashed classifier, skipping the buckets
+     * that were never used
+     * @param bagOfWords the classifier's words information
+     * @param output where the table will be written
+     * @throws IOException if the table can't be written
+     */
+    private static void writeBuckets( BagOfWords bagOfWords,
+        VarIntOutput output ) throws IOException {
+        int used = 0;
+        for( int id = 0; id < bagOfWords.size(); id++ ) {
+            if( bagOfWords.positiveCount( id ) != 0 ||
+                bagOfWords.negativeCount( id ) != 0 ) {
+                used++;
+            }
+        }
+        output.writeVarLong( bagOfWords.size() );
+        output.writeVarLong( used );
+        int previous = 0;
+        for( int id = 0; id < bagOfWords.size(); id++ ) {
+            if( bagOfWords.positiveCount( id ) != 0 ||
+                bagOfWords.negativeCount( id ) != 0 ) {
+                output.writeVarLong( id - previous );
+                output.writeVarLong( bagOfWords.positiveCount( id ) );
+                output.writeVarLong( bagOfWords.negativeCount( id ) );
+                previous = id;
+            }
+        }
+    }
+
+    /**
+     * reads a classifier from a channel, which isn't closed
+     * @param channel where the classifier will be read
+     * @return the classifier read
+     * @throws IOException if the classifier can't be read
+     */
+    public static NaiveBayesClassifier read( ReadableByteChannel channel )
+        throws IOException {
+        return read( Channels.newInputStream( channel ) );
+    }
+
+    /**
+     * reads a classifier from a stream, which isn't closed
+     * @param inputStream where the classifier will be read
+     * @return the classifier read
+     * @throws IOException if the classifier can't be read
+     */
+    public static NaiveBayesClassifier read( InputStream inputStream )
+        throws IOException {
+        int flags = readFlags( inputStream );
+        if( ( flags & FLAG_MULTICLASS ) != 0 ) {
+            throw new IOException( "the classifier has more than two classes" );
+        }
+        if( ( flags & ~( FLAG_DEFLATE | FLAG_HASHED | FLAG_NGRAMS ) ) != 0 ) {
+            throw new IOException( "unsupported classifier flags " + flags );
+        }
+
+        Inflater inflater = null;
+        InputStream body = inputStream;
+        if( ( flags & FLAG_DEFLATE ) != 0 ) {
+            inflater = new Inflater();
+            body = new InflaterInputStream( inputStream, inflater,
+                BUFFER_SIZE );
+        }
+        try {
+            VarIntInput input = new VarIntInput( body );
+            int wordGrams = 1;
+            int characterGrams = 0;
+            if( ( flags & FLAG_NGRAMS ) != 0 ) {
+                wordGrams = input.readVarInt();
+                characterGrams = input.readVarInt();
+                if( wordGrams < 1 ) {
+                    throw new IOException( "corrupted classifier file" );
+                }
+            }
+            int numberPositiveExample = input.readVarInt();
+            int numberNegativeExample = input.readVarInt();
+            long positiveVocabulary = input.readVarLong();
+            long negativeVocabulary = input.readVarLong();
+            int size = input.readVarInt();
+
+            BagOfWords bagOfWords;
+            if( ( flags & FLAG_HASHED ) == 0 ) {
+                bagOfWords = new BagOfWords( size );
+                for( int id = 0; id < size; id++ ) {
+                    String word = input.readString( input.readVarInt() );
+                    int positive = input.readVarInt();
+                    int negative = input.readVarInt();
+                    bagOfWords.addCounts( word, positive, negative );
+                }
+            } else {
+                if( size == 0 ) {
+                    throw new IOException( "corrupted classifier file" );
+                }
+                bagOfWords = BagOfWords.hashed( size );
+                int used = input.readVarInt();
+                int id = 0;
+                for( int i = 0; i < used; i++ ) {
+                    id += input.readVarInt();
+                    if( id >= size ) {
+                        throw new IOException( "corrupted classifier file" );
+                    }
+                    int positive = input.readVarInt();
+                    int negative = input.readVarInt();
+                    bagOfWords.addCounts( id, positive, negative );
+                }
+            }
+            bagOfWords.addVocabularies( positiveVocabulary,
+                negativeVocabulary );
+            return new NaiveBayesClassifier( bagOfWords, numberPositiveExample,
+                numberNegativeExample, wordGrams, characterGrams );
+        } finally {
+            if( inflater != null ) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * reads a multi-class classifier from a stream, which isn't closed
+     * @param inputStream where the classifier will be read
+     * @return the classifier read
+     * @throws IOException if the classifier can't be read
+     */
+    public static MultiClassClassifier readMultiClass(
+        InputStream inputStream ) throws IOException {
+        int flags = readFlags( inputStream );
+        if( ( flags & FLAG_MULTICLASS ) == 0 ) {
+            throw new IOException( "the classifier has two classes" );
+        }
+        if( ( flags & ~( FLAG_DEFLATE | FLAG_MULTICLASS ) ) != 0 ) {
+            throw new IOException( "unsupported classifier flags " + flags );
+        }
+
+        Inflater inflater = null;
+        InputStream body = inputStream;
+        if( ( flags & FLAG_DEFLATE ) != 0 ) {
+            inflater = new Inflater();
+            body = new InflaterInputStream( inputStream, inflater,
+                BUFFER_SIZE );
+        }
+        try {
+            VarIntInput input = new VarIntInput( body );
+            int classes = input.readVarInt();
+            if( classes < 2 ) {
+                throw new IOException( "corrupted classifier file" );
+            }
+            int[] numberExamples = new int[ classes ];
+            long[] vocabularies = new long[ classes ];
+            for( int category = 0; category < classes; category++ ) {
+                numberExamples[ category ] = input.readVarInt();
+                vocabularies[ category ] = input.readVarLong();
+            }
+            int size = input.readVarInt();
+            MultiClassBagOfWords bagOfWords;
+            try {
+                bagOfWords = new MultiClassBagOfWords( classes, size );
+            } catch( IllegalArgumentException e ) {
+                throw new IOException( "corrupted classifier file", e );
+            }
+            int[] counts = new int[ classes ];
+            for( int id = 0; id < size; id++ ) {
+                String word = input.readString( input.readVarInt() );
+                for( int category = 0; category < classes; category++ ) {
+                    counts[ category ] = input.readVarInt();
+                }
+                bagOfWords.addCounts( word, counts );
+            }
+            bagOfWords.addVocabularies( vocabularies );
+            return new MultiClassClassifier( bagOfWords, numberExamples );
+        } finally {
+            if( inflater != null ) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * indicates if a file has a multi-class classifier, files on other
+     * formats, as the mapped models, don't have one
+     * @param path the path of the file
+     * @return true if the file has a classifier saved by a
+     * MultiClassClassifier
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isMultiClass( String path ) throws IOException {
+        try( DataInputStream header = new DataInputStream(
+            new FileInputStream( path ) ) ) {
+            return header.readInt() == MAGIC &&
+                header.readUnsignedByte() == VERSION &&
+                ( header.readUnsignedByte() & FLAG_MULTICLASS ) != 0;
+        }
+    }
+
+    /**
+     * reads the header of a saved classifier
+     * @param inputStream where the classifier will be read
+     * @return the classifier's flags
+     * @throws IOException if the header isn't the one of a classifier file
+     */
+    private static int readFlags( InputStream inputStream )
+        throws IOException {
+        DataInputStream header = new DataInputStream( inputStream );
+        if( header.readInt() != MAGIC ) {
+            throw new IOException( "not a classifier file" );
+        }
+        int version = header.readUnsignedByte();
+        if( version != VERSION ) {
+            throw new IOException( "unsupported classifier version " +
+                version );
+        }
+        return header.readUnsignedByte();
+    }
+
+    /**
+     * buffered output of varints, it avoids the synchronized single byte
+     * writes of the JDK streams
+     */
+    private static final class VarIntOutput {
+
+        /**
+         * where the bytes are written
+         */
+        private final OutputStream outputStream;
+
+        /**
+         * bytes that weren't written yet
+         */
+        private final byte[] buffer;
+
+        /**
+         * number of bytes on the buffer
+         */
+        private int position;
+
+        /**
+         * class constructor
+         * @param outputStream where the bytes are written
+         */
+        VarIntOutput( OutputStream outputStream ) {
+            this.outputStream = outputStream;
+            buffer = new byte[ BUFFER_SIZE ];
+            position = 0;
+        }
+
+        /**
+         * writes a non negative number, seven bits on each byte
+         * @param value the number that will be written
+         * @throws IOException if the number can't be written
+         */
+        void writeVarLong( long value ) throws IOException {
+            if( buffer.length - position < 10 ) {
+                flush();
+            }
+            while( ( value & ~0x7FL ) != 0 ) {
+                buffer[ position++ ] = ( byte ) ( ( value & 0x7F ) | 0x80 );
+                value >>>= 7;
+            }
+            buffer[ position++ ] = ( byte ) value;
+        }
+
+        /**
+         * writes raw bytes
+         * @param bytes the bytes that will be written
+         * @throws IOException if the bytes can't be written
+         */
+        void write( byte[] bytes ) throws IOException {
+            if( buffer.length - position < bytes.length ) {
+                flush();
+                if( bytes.length > buffer.length ) {
+                    outputStream.write( bytes );
+                    return;
+                }
+            }
+            System.arraycopy( bytes, 0, buffer, position, bytes.length );
+            position += bytes.length;
+        }
+
+        /**
+         * writes the buffered bytes
+         * @throws IOException if the bytes can't be written
+         */
+        void flush() throws IOException {
+            outputStream.write( buffer, 0, position );
+            position = 0;
+        }
+    }
+
+    /**
+     * buffered input of varints
+     */
+    private static final class VarIntInput {
+
+        /**
+         * where the bytes are read
+         */
+        private final InputStream inputStream;
+
+        /**
+         * bytes read but not consumed yet
+         */
+        private byte[] buffer;
+
+        /**
+         * position of the next byte on the buffer
+         */
+        private int position;
+
+        /**
+         * number of valid bytes on the buffer
+         */
+        private int limit;
+
+        /**
+         * class constructor
+         * @param inputStream where the bytes are read
+         */
+        VarIntInput( InputStream inputStream ) {
+            this.inputStream = inputStream;
+            buffer = new byte[ BUFFER_SIZE ];
+            position = 0;
+            limit = 0;
+        }
+
+        /**
+         * reads a number that must fit on an int
+         * @return the number read
+         * @throws IOException if the number can't be read
+         */
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if( value > Integer.MAX_VALUE ) {
+                throw new IOException( "corrupted classifier file" );
+            }
+            return ( int ) value;
+        }
+
+        /**
+         * reads a non negative number, seven bits on each byte
+         * @return the number read
+         * @throws IOException if the number can't be read
+         */
+        long readVarLong() throws IOException {
+            long value = 0;
+            for( int shift = 0; shift < 64; shift += 7 ) {
+                if( position == limit ) {
+                    fill( 1 );
+                }
+                byte read = buffer[ position++ ];
+                value |= ( long ) ( read & 0x7F ) << shift;
+                if( read >= 0 ) {
+                    return value;
+                }
+            }
+            throw new IOException( "corrupted classifier file" );
+        }
+
+        /**
+         * reads a string encoded as UTF-8
+         * @param length number of bytes of the string
+         * @return the string read
+         * @throws IOException if the string can't be read
+         */
+        String readString( int length ) throws IOException {
+            if( limit - position < length ) {
+                fill( length );
+            }
+            String read = new String( buffer, position, length,
+                StandardCharsets.UTF_8 );
+            position += length;
+            return read;
+        }
+
+        /**
+         * reads bytes until the buffer has at least a number of them
+         * @param length the number of bytes needed
+         * @throws IOException if the input is over before the bytes needed
+         */
+        private void fill( int length ) throws IOException {
+            if( length > buffer.length ) {
+                byte[] larger = new byte[ length ];
+                System.arraycopy( buffer, position, larger, 0, limit - position );
+                buffer = larger;
+            } else {
+                System.arraycopy( buffer, position, buffer, 0, limit - position );
+            }
+            limit -= position;
+            position = 0;
+            while( limit < length ) {
+                int read = inputStream.read( buffer, limit,
+                    buffer.length - limit );
+                if( read < 0 ) {
+                    throw new EOFException( "corrupted classifier file" );
+                }
+                limit += read;
+            }
+        }
+    }
+}
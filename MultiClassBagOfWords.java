@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.Arrays;
+
+/**
+ * words information of a classifier with any number of classes. The counts
+ * of a word for every class are kept next to each other, on the word's
+ * slice of a single array, so a single lookup of the word reaches the
+ * counts of all the classes
+ * @author vitorcezar
+ */
+public class MultiClassBagOfWords {
+
+    /**
+     * initial number of words the count array can keep
+     */
+    private static final int INITIAL_CAPACITY = 512;
+
+    /**
+     * the largest number of counts the array can keep, as the JVM can't
+     * allocate arrays up to Integer.MAX_VALUE
+     */
+    private static final int MAX_COUNTS = Integer.MAX_VALUE - 8;
+
+    /**
+     * mapping for the words to their ids
+     */
+    private final TermDictionary terms;
+
+    /**
+     * number of classes
+     */
+    private final int classes;
+
+    /**
+     * how many times each word occurred on a document of each class, the
+     * count of a word on a class is at the word's id times the number of
+     * classes plus the class
+     */
+    private int[] counts;
+
+    /**
+     * number of words on the vocabulary of each class
+     */
+    private final long[] vocabularies;
+
+    /**
+     * creates an empty bag
+     * @param classes number of classes
+     */
+    public MultiClassBagOfWords( int classes ) {
+        this( classes, INITIAL_CAPACITY );
+    }
+
+    /**
+     * creates an empty bag that can take a number of words without growing
+     * @param classes number of classes
+     * @param expectedWords the number of words expected
+     */
+    public MultiClassBagOfWords( int classes, int expectedWords ) {
+        if( classes < 2 ) {
+            throw new IllegalArgumentException( "there must be two classes at least" );
+        }
+        this.classes = classes;
+        long length = ( long ) Math.max( expectedWords, 1 ) * classes;
+        if( length > MAX_COUNTS ) {
+            throw new IllegalArgumentException( "too many words for " +
+                classes + " classes" );
+        }
+        terms = new TermDictionary( expectedWords );
+        counts = new int[ ( int ) length ];
+        vocabularies = new long[ classes ];
+    }
+
+    /**
+     * returns the number of classes
+     * @return the number of classes
+     */
+    public int classes() {
+        return classes;
+    }
+
+    /**
+     * indicates that a word is present on a document of a class
+     * @param word word that is being evaluated
+     * @param category the document's class
+     */
+    public void set( String word, int category ) {
+        vocabularies[ category ]++;
+        int id = terms.add( word );
+        ensureCapacity( id );
+        counts[ id * classes + category ]++;
+    }
+
+    /**
+     * indicates that a token is present on a document of a class
+     * @param tokenizer the tokenizer that has the word
+     * @param token the word's index on the tokenizer
+     * @param category the document's class
+     */
+    public void set( Tokenizer tokenizer, int token, int category ) {
+        vocabularies[ category ]++;
+        int id = terms.add( tokenizer.text(), tokenizer.start( token ),
+            tokenizer.length( token ), tokenizer.hash( token ) );
+        ensureCapacity( id );
+        counts[ id * classes + category ]++;
+    }
+
+    /**
+     * adds the words and vocabularies of another bag to this one, as if its
+     * documents had been given to this bag
+     * @param other the bag that will be added, it must have the same classes
+     */
+    public void merge( MultiClassBagOfWords other ) {
+        if( other.classes != classes ) {
+            throw new IllegalArgumentException( "the bags have different classes" );
+        }
+        for( int otherId = 0; otherId < other.terms.size(); otherId++ ) {
+            int id = terms.add( other.terms.term( otherId ) );
+            ensureCapacity( id );
+            for( int category = 0; category < classes; category++ ) {
+                counts[ id * classes + category ] +=
+                    other.counts[ otherId * classes + category ];
+            }
+        }
+        for( int category = 0; category < classes; category++ ) {
+            vocabularies[ category ] += other.vocabularies[ category ];
+        }
+    }
+
+    /**
+     * adds the counts of a word on every class, as the saved classifiers
+     * are read
+     * @param word the word
+     * @param wordCounts how many times the word occurred on each class
+     */
+    void addCounts( String word, int[] wordCounts ) {
+        int id = terms.add( word );
+        ensureCapacity( id );
+        for( int category = 0; category < classes; category++ ) {
+            counts[ id * classes + category ] += wordCounts[ category ];
+        }
+    }
+
+    /**
+     * adds to the number of words on the vocabulary of each class, as the
+     * saved classifiers are read
+     * @param added the number of words added to each class
+     */
+    void addVocabularies( long[] added ) {
+        for( int category = 0; category < classes; category++ ) {
+            vocabularies[ category ] += added[ category ];
+        }
+    }
+
+    /**
+     * returns the id of a word
+     * @param word word that is being searched
+     * @return the word's id or TermDictionary.NOT_FOUND if it's unknown
+     */
+    public int indexOf( String word ) {
+        return terms.find( word );
+    }
+
+    /**
+     * returns the id of a token without creating a string
+     * @param tokenizer the tokenizer that has the word
+     * @param token the word's index on the tokenizer
+     * @return the word's id or TermDictionary.NOT_FOUND if it's unknown
+     */
+    public int indexOf( Tokenizer tokenizer, int token ) {
+        return terms.find( tokenizer.text(), tokenizer.start( token ),
+            tokenizer.length( token ), tokenizer.hash( token ) );
+    }
+
+    /**
+     * returns the probability that a word will occur on a document of a
+     * class. The smoothing is the one of the two classes bag: one plus the
+     * word's count over the class' vocabulary plus the whole vocabulary
+     * @param word word that is being evaluated
+     * @param category the class
+     * @return the probability, or 1 if the word is unknown
+     */
+    public double probability( String word, int category ) {
+        int id = terms.find( word );
+        if( id == TermDictionary.NOT_FOUND ) {
+            return 1;
+        }
+        return ( double ) ( 1 + counts[ id * classes + category ] ) /
+            ( double ) ( vocabularies[ category ] + totalVocabulary() );
+    }
+
+    /**
+     * adds the logarithm of the probability of a word on each class to the
+     * scores of the classes
+     * @param id the word's id
+     * @param scores the score of each class
+     */
+    public void addLogProbabilities( int id, double[] scores ) {
+        long total = totalVocabulary();
+        int offset = id * classes;
+        for( int category = 0; category < classes; category++ ) {
+            scores[ category ] += Math.log( ( double ) ( 1 +
+                counts[ offset + category ] ) /
+                ( double ) ( vocabularies[ category ] + total ) );
+        }
+    }
+
+    /**
+     * returns an immutable model with the logarithm of the probability of
+     * every word on every class
+     * @param logPriors the logarithm of the prior of each class
+     * @return the model of the bag
+     */
+    public MultiClassModel freeze( double[] logPriors ) {
+        TermDictionary frozenTerms = new TermDictionary( terms.size() );
+        double[] logProbabilities = new double[ terms.size() * classes ];
+        double[] scores = new double[ classes ];
+        for( int id = 0; id < terms.size(); id++ ) {
+            frozenTerms.add( terms.term( id ) );
+            Arrays.fill( scores, 0 );
+            addLogProbabilities( id, scores );
+            System.arraycopy( scores, 0, logProbabilities, id * classes,
+                classes );
+        }
+        return new MultiClassModel( frozenTerms, logProbabilities,
+            logPriors.clone() );
+    }
+
+    /**
+     * returns the number of different words on the bag
+     * @return the number of different words on the bag
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * returns the word that has the id
+     * @param id the word's id
+     * @return the word that has the id
+     */
+    public String word( int id ) {
+        return terms.term( id );
+    }
+
+    /**
+     * returns how many times a word occurred on a document of a class
+     * @param id the word's id
+     * @param category the class
+     * @return how many times the word occurred on the class
+     */
+    public int count( int id, int category ) {
+        return counts[ id * classes + category ];
+    }
+
+    /**
+     * returns the number of words on the vocabulary of a class
+     * @param category the class
+     * @return the number of words on the class' vocabulary
+     */
+    public long vocabulary( int category ) {
+        return vocabularies[ category ];
+    }
+
+    /**
+     * returns the number of words on the vocabularies of all classes
+     * @return the number of words on all vocabularies
+     */
+    private long totalVocabulary() {
+        long total = 0;
+        for( long vocabulary : vocabularies ) {
+            total += vocabulary;
+        }
+        return total;
+    }
+
+    /**
+     * grows the count array so it can keep the information of a word. As
+     * the array never exceeds MAX_COUNTS, the position of a count always
+     * fits on an int
+     * @param id the word's id
+     * @throws IllegalStateException if the counts of the word don't fit on
+     * an array
+     */
+    private void ensureCapacity( int id ) {
+        long needed = ( long ) ( id + 1 ) * classes;
+        if( needed > counts.length ) {
+            if( needed > MAX_COUNTS ) {
+                throw new IllegalStateException( "too many words for " +
+                    classes + " classes" );
+            }
+            long words = Math.min( Math.max( id + 1,
+                2L * ( counts.length / classes ) ), MAX_COUNTS / classes );
+            counts = Arrays.copyOf( counts, ( int ) ( words * classes ) );
+        }
+    }
+}
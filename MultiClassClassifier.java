@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Naive Bayes for text classification with any number of classes. A
+ * document is scored for every class at once: each word is looked up a
+ * single time and its counts for all the classes are read together. With
+ * two classes it gives the same classifications as NaiveBayesClassifier
+ * @author vitorcezar
+ */
+public class MultiClassClassifier {
+
+    /**
+     * size of the buffers used to save and load the classifier
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * words information of every class
+     */
+    private final MultiClassBagOfWords bagOfWords;
+
+    /**
+     * counts the number of examples of each class
+     */
+    private final int[] numberExamples;
+
+    /**
+     * class constructor
+     * @param classes number of classes, they are numbered from zero
+     */
+    public MultiClassClassifier( int classes ) {
+        bagOfWords = new MultiClassBagOfWords( classes );
+        numberExamples = new int[ classes ];
+    }
+
+    /**
+     * creates a classifier with the training read from a saved one
+     * @param bagOfWords the words information of every class
+     * @param numberExamples the number of examples of each class
+     */
+    MultiClassClassifier( MultiClassBagOfWords bagOfWords,
+        int[] numberExamples ) {
+        if( bagOfWords.classes() != numberExamples.length ) {
+            throw new IllegalArgumentException( "the bag has different classes" );
+        }
+        this.bagOfWords = bagOfWords;
+        this.numberExamples = numberExamples;
+    }
+
+    /**
+     * saves a classifier on the binary format of ModelFormat
+     * @param path the output's path
+     * @param classifier the classifier that will be saved
+     * @throws IOException if the classifier can't be written
+     */
+    public static void saveClassifier( String path,
+        MultiClassClassifier classifier ) throws IOException {
+        try( OutputStream outputStream = new BufferedOutputStream(
+            Channels.newOutputStream( FileChannel.open( Paths.get( path ),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING ) ), BUFFER_SIZE ) ) {
+            ModelFormat.write( classifier, outputStream, false );
+        }
+    }
+
+    /**
+     * returns a saved classifier
+     * @param path the path of the classifier
+     * @return the classifier
+     * @throws IOException if the classifier can't be read
+     */
+    public static MultiClassClassifier loadClassifier( String path )
+        throws IOException {
+        try( InputStream inputStream = new BufferedInputStream(
+            Channels.newInputStream( FileChannel.open( Paths.get( path ),
+            StandardOpenOption.READ ) ), BUFFER_SIZE ) ) {
+            return ModelFormat.readMultiClass( inputStream );
+        }
+    }
+
+    /**
+     * returns the words information of every class
+     * @return the words information of every class
+     */
+    MultiClassBagOfWords getBagOfWords() {
+        return bagOfWords;
+    }
+
+    /**
+     * returns the number of different words of the classifier
+     * @return the number of different words
+     */
+    public int size() {
+        return bagOfWords.size();
+    }
+
+    /**
+     * returns the number of classes
+     * @return the number of classes
+     */
+    public int classes() {
+        return numberExamples.length;
+    }
+
+    /**
+     * returns the number of examples of a class
+     * @param category the class
+     * @return the number of examples of the class
+     */
+    public int getNumberExample( int category ) {
+        return numberExamples[ category ];
+    }
+
+    /**
+     * adds a training example to the classifier
+     * @param category the example's class
+     * @param example example that will be added
+     */
+    public void setExample( int category, String example ) {
+        setExample( category, example, WordTokenizer.local() );
+    }
+
+    /**
+     * adds a training example to the classifier
+     * @param category the example's class
+     * @param example example that will be added
+     * @param tokenizer the tokenizer that splits the example into words
+     */
+    public void setExample( int category, CharSequence example,
+        Tokenizer tokenizer ) {
+        if( category < 0 || category >= numberExamples.length ) {
+            throw new IllegalArgumentException( "unknown class " + category );
+        }
+        numberExamples[ category ]++;
+        int tokens = tokenizer.tokenize( example );
+        for( int token = 0; token < tokens; token++ ) {
+            bagOfWords.set( tokenizer, token, category );
+        }
+    }
+
+    /**
+     * adds the training of another classifier to this one
+     * @param other the classifier whose training will be added, it must
+     * have the same classes
+     */
+    public void merge( MultiClassClassifier other ) {
+        if( other.numberExamples.length != numberExamples.length ) {
+            throw new IllegalArgumentException( "the classifiers have different classes" );
+        }
+        bagOfWords.merge( other.bagOfWords );
+        for( int category = 0; category < numberExamples.length; category++ ) {
+            numberExamples[ category ] += other.numberExamples[ category ];
+        }
+    }
+
+    /**
+     * returns the example's classification and the chance of every class.
+     * It doesn't modify the classifier, so many threads can evaluate
+     * examples at the same time while there is no training
+     * @param stringToClassify example that will be evaluated
+     * @return the example's classification and chances
+     */
+    public MultiClassResult evaluate( String stringToClassify ) {
+        return evaluate( stringToClassify, WordTokenizer.local() );
+    }
+
+    /**
+     * returns the example's classification and the chance of every class
+     * @param stringToClassify example that will be evaluated
+     * @param tokenizer the tokenizer that splits the example into words, it
+     * must be the one used on the training
+     * @return the example's classification and chances
+     */
+    public MultiClassResult evaluate( CharSequence stringToClassify,
+        Tokenizer tokenizer ) {
+        double[] scores = new double[ numberExamples.length ];
+        int tokens = tokenizer.tokenize( stringToClassify );
+        for( int token = 0; token < tokens; token++ ) {
+            int id = bagOfWords.indexOf( tokenizer, token );
+            if( id != TermDictionary.NOT_FOUND ) {
+                bagOfWords.addLogProbabilities( id, scores );
+            }
+        }
+        double[] logPriors = logPriors();
+        for( int category = 0; category < scores.length; category++ ) {
+            scores[ category ] += logPriors[ category ];
+        }
+        return MultiClassResult.fromScores( scores );
+    }
+
+    /**
+     * returns an immutable model of the classifier, where the
+     * log-probability of every word on every class is computed once
+     * @return the model of the classifier
+     */
+    public MultiClassModel freeze() {
+        return bagOfWords.freeze( logPriors() );
+    }
+
+    /**
+     * returns the logarithm of the prior of each class
+     * @return the log-prior of each class
+     */
+    private double[] logPriors() {
+        long total = 0;
+        for( int examples : numberExamples ) {
+            total += examples;
+        }
+        double[] logPriors = new double[ numberExamples.length ];
+        for( int category = 0; category < logPriors.length; category++ ) {
+            logPriors[ category ] = Math.log( numberExamples[ category ] ) -
+                Math.log( total );
+        }
+        return logPriors;
+    }
+}
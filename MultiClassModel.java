@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * immutable model taken from a trained multi-class classifier. The
+ * logarithm of the probability of each word on every class is computed once
+ * and kept on the word's slice of a single array, so scoring a word is a
+ * single lookup followed by one addition for each class. Unknown words are
+ * skipped
+ * @author vitorcezar
+ */
+public final class MultiClassModel {
+
+    /**
+     * mapping for the words to their ids
+     */
+    private final TermDictionary terms;
+
+    /**
+     * the log-probability of each word on each class, the one of a word on a
+     * class is at the word's id times the number of classes plus the class
+     */
+    private final double[] logProbabilities;
+
+    /**
+     * the logarithm of the prior of each class
+     */
+    private final double[] logPriors;
+
+    /**
+     * class constructor
+     * @param terms mapping for the words to their ids
+     * @param logProbabilities the log-probability of each word on each class
+     * @param logPriors the log-prior of each class
+     */
+    MultiClassModel( TermDictionary terms, double[] logProbabilities,
+        double[] logPriors ) {
+        this.terms = terms;
+        this.logProbabilities = logProbabilities;
+        this.logPriors = logPriors;
+    }
+
+    /**
+     * returns the number of classes
+     * @return the number of classes
+     */
+    public int classes() {
+        return logPriors.length;
+    }
+
+    /**
+     * returns the number of words on the model
+     * @return the number of words on the model
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @return the text's classification and chances
+     */
+    public MultiClassResult evaluate( String text ) {
+        return evaluate( text, WordTokenizer.local() );
+    }
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words
+     * @return the text's classification and chances
+     */
+    public MultiClassResult evaluate( CharSequence text,
+        Tokenizer tokenizer ) {
+        int classes = logPriors.length;
+        double[] scores = new double[ classes ];
+        int tokens = tokenizer.tokenize( text );
+        char[] chars = tokenizer.text();
+        for( int token = 0; token < tokens; token++ ) {
+            int id = terms.find( chars, tokenizer.start( token ),
+                tokenizer.length( token ), tokenizer.hash( token ) );
+            if( id != TermDictionary.NOT_FOUND ) {
+                int offset = id * classes;
+                for( int category = 0; category < classes; category++ ) {
+                    scores[ category ] += logProbabilities[ offset + category ];
+                }
+            }
+        }
+        for( int category = 0; category < classes; category++ ) {
+            scores[ category ] += logPriors[ category ];
+        }
+        return MultiClassResult.fromScores( scores );
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * immutable outcome of a classification with any number of classes, it can
+ * be shared between threads
+ * @author vitorcezar
+ */
+public final class MultiClassResult {
+
+    /**
+     * the class the example was classified as
+     */
+    private final int category;
+
+    /**
+     * the chance that the example belongs to each class
+     */
+    private final double[] chances;
+
+    /**
+     * class constructor
+     * @param category the class the example was classified as
+     * @param chances the chance of each class
+     */
+    private MultiClassResult( int category, double[] chances ) {
+        this.category = category;
+        this.chances = chances;
+    }
+
+    /**
+     * returns the result of an example given the logarithm of its joint
+     * probability with each class
+     * @param scores the log-probability of each class, it's modified
+     * @return the result of the example
+     */
+    public static MultiClassResult fromScores( double[] scores ) {
+        int best = 0;
+        for( int category = 1; category < scores.length; category++ ) {
+            if( scores[ category ] > scores[ best ] ) {
+                best = category;
+            }
+        }
+
+        // the scores are shifted by the highest one, so they can't underflow
+        double max = scores[ best ];
+        double sum = 0;
+        for( int category = 0; category < scores.length; category++ ) {
+            scores[ category ] = Math.exp( scores[ category ] - max );
+            sum += scores[ category ];
+        }
+        for( int category = 0; category < scores.length; category++ ) {
+            scores[ category ] /= sum;
+        }
+        return new MultiClassResult( best, scores );
+    }
+
+    /**
+     * returns the class the example was classified as
+     * @return the class the example was classified as
+     */
+    public int getCategory() {
+        return category;
+    }
+
+    /**
+     * returns the chance that the example belongs to a class
+     * @param category the class
+     * @return the chance that the example belongs to the class
+     */
+    public double chance( int category ) {
+        return chances[ category ];
+    }
+
+    /**
+     * returns the chance of the class the example was classified as
+     * @return the chance of the example's classification
+     */
+    public double chance() {
+        return chances[ category ];
+    }
+
+    /**
+     * returns the number of classes
+     * @return the number of classes
+     */
+    public int classes() {
+        return chances.length;
+    }
+}
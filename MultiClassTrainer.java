@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * trains a multi-class classifier on many threads. The corpus is split the
+ * same way as by ParallelTrainer, each worker trains its own classifier and
+ * the partial classifiers are merged at the end
+ * @author vitorcezar
+ */
+public class MultiClassTrainer {
+
+    /**
+     * number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * number of classes of the classifiers
+     */
+    private final int classes;
+
+    /**
+     * the classifiers trained by the workers
+     */
+    private final List< MultiClassClassifier > partials;
+
+    /**
+     * the classifier of each worker thread
+     */
+    private final ThreadLocal< MultiClassClassifier > partial;
+
+    /**
+     * class constructor
+     * @param threads number of worker threads
+     * @param classes number of classes, the labels go from 0 to classes - 1
+     */
+    public MultiClassTrainer( int threads, int classes ) {
+        if( threads < 1 ) {
+            throw new IllegalArgumentException( "threads must be positive" );
+        }
+        if( classes < 2 ) {
+            throw new IllegalArgumentException( "there must be two classes at least" );
+        }
+        this.threads = threads;
+        this.classes = classes;
+        partials = new ArrayList<>();
+        partial = ThreadLocal.withInitial( this::newPartial );
+    }
+
+    /**
+     * trains a classifier with every record of the chunks of a corpus
+     * @param chunks the corpus, one example for each record
+     * @return the classifier trained with the corpus
+     * @throws IOException if the corpus can't be read
+     * @throws InputFormatException if a line isn't on the expected format or
+     * its label isn't one of the classes
+     */
+    public MultiClassClassifier train( ChunkReader chunks )
+        throws IOException {
+        ParallelTrainer.feed( chunks, threads,
+            label -> label >= 0 && label < classes, this::trainChunk );
+
+        // the partial classifiers are merged into a single one
+        MultiClassClassifier classifier = new MultiClassClassifier( classes );
+        for( MultiClassClassifier trained : partials ) {
+            classifier.merge( trained );
+        }
+        return classifier;
+    }
+
+    /**
+     * trains the classifier of the current thread with a chunk
+     * @param records the chunk's records
+     */
+    private void trainChunk( TextRecord[] records ) {
+        MultiClassClassifier classifier = partial.get();
+        Tokenizer tokenizer = WordTokenizer.local();
+        for( TextRecord record : records ) {
+            classifier.setExample( record.getLabel(), record.getText(),
+                tokenizer );
+        }
+    }
+
+    /**
+     * creates the classifier of a worker thread
+     * @return the classifier of a worker thread
+     */
+    private synchronized MultiClassClassifier newPartial() {
+        MultiClassClassifier classifier = new MultiClassClassifier( classes );
+        partials.add( classifier );
+        return classifier;
+    }
+}
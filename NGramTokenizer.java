@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.Arrays;
+
+/**
+ * tokenizer that adds n-grams to the words of WordTokenizer, so phrases as
+ * "not good" are features of their own. The words are left by WordTokenizer
+ * separated by a single space, so a word n-gram is the span of the
+ * normalized text from its first word to its last one, and its hash is
+ * combined from the hashes of its words instead of being computed from its
+ * characters again. Character n-grams of the words can be added too, they
+ * are copied to the end of the normalized text after a mark that words
+ * can't have, so they never count as a word with the same characters. No
+ * string is created for the n-grams, and the buffers are reused between
+ * texts
+ * @author vitorcezar
+ */
+public class NGramTokenizer implements Tokenizer {
+
+    /**
+     * the tokenizer of each thread
+     */
+    private static final ThreadLocal< NGramTokenizer > LOCAL =
+        new ThreadLocal<>();
+
+    /**
+     * the character written before each character n-gram, it isn't a word
+     * character
+     */
+    public static final char CHARACTER_GRAM_MARK = '#';
+
+    /**
+     * initial length of the buffers
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * splits the text into words
+     */
+    private final WordTokenizer words;
+
+    /**
+     * the largest number of words of an n-gram, one for words only
+     */
+    private final int wordGrams;
+
+    /**
+     * the number of characters of the character n-grams, zero for none
+     */
+    private final int characterGrams;
+
+    /**
+     * the words followed by the character n-grams, only used when there are
+     * character n-grams
+     */
+    private char[] text;
+
+    /**
+     * the position of each token on the normalized text
+     */
+    private int[] starts;
+
+    /**
+     * the number of characters of each token
+     */
+    private int[] lengths;
+
+    /**
+     * the hash of each token
+     */
+    private int[] hashes;
+
+    /**
+     * the hash code of each word, as String.hashCode computes it
+     */
+    private int[] hashCodes;
+
+    /**
+     * the hash code of the last n-gram that starts on each word
+     */
+    private int[] gramHashCodes;
+
+    /**
+     * 31 raised to the number of characters of each word
+     */
+    private int[] powers;
+
+    /**
+     * class constructor
+     * @param wordGrams the largest number of words of an n-gram, one for
+     * words only
+     * @param characterGrams the number of characters of the character
+     * n-grams, zero for none
+     */
+    public NGramTokenizer( int wordGrams, int characterGrams ) {
+        verify( wordGrams, characterGrams );
+        this.wordGrams = wordGrams;
+        this.characterGrams = characterGrams;
+        words = new WordTokenizer();
+        text = new char[ INITIAL_CAPACITY ];
+        starts = new int[ INITIAL_CAPACITY ];
+        lengths = new int[ INITIAL_CAPACITY ];
+        hashes = new int[ INITIAL_CAPACITY ];
+        hashCodes = new int[ INITIAL_CAPACITY ];
+        gramHashCodes = new int[ INITIAL_CAPACITY ];
+        powers = new int[ INITIAL_CAPACITY ];
+    }
+
+    /**
+     * verifies the sizes of the n-grams
+     * @param wordGrams the largest number of words of an n-gram
+     * @param characterGrams the number of characters of the character
+     * n-grams
+     */
+    static void verify( int wordGrams, int characterGrams ) {
+        if( wordGrams < 1 ) {
+            throw new IllegalArgumentException( "word n-grams must be positive" );
+        }
+        if( characterGrams < 0 ) {
+            throw new IllegalArgumentException( "character n-grams can't be negative" );
+        }
+    }
+
+    /**
+     * returns the tokenizer of the current thread with the given n-grams
+     * @param wordGrams the largest number of words of an n-gram
+     * @param characterGrams the number of characters of the character
+     * n-grams, zero for none
+     * @return the tokenizer of the current thread
+     */
+    public static NGramTokenizer local( int wordGrams, int characterGrams ) {
+        NGramTokenizer tokenizer = LOCAL.get();
+        if( tokenizer == null || tokenizer.wordGrams != wordGrams ||
+            tokenizer.characterGrams != characterGrams ) {
+            tokenizer = new NGramTokenizer( wordGrams, characterGrams );
+            LOCAL.set( tokenizer );
+        }
+        return tokenizer;
+    }
+
+    @Override
+    public int tokenize( CharSequence input ) {
+        int count = words.tokenize( input );
+        if( count == 0 ) {
+            return 0;
+        }
+        char[] chars = words.text();
+        int end = words.start( count - 1 ) + words.length( count - 1 );
+        int capacity = count * wordGrams;
+        if( characterGrams > 0 ) {
+            // a word has fewer character n-grams than characters
+            capacity += end;
+            if( end * ( characterGrams + 2 ) > text.length ) {
+                text = new char[ Math.max( end * ( characterGrams + 2 ),
+                    text.length * 2 ) ];
+            }
+            System.arraycopy( chars, 0, text, 0, end );
+            chars = text;
+        }
+        ensureCapacity( capacity );
+
+        // the words are hashed once, and their hashes are combined
+        for( int word = 0; word < count; word++ ) {
+            int start = words.start( word );
+            int length = words.length( word );
+            int hashCode = 0;
+            int power = 1;
+            for( int i = start; i < start + length; i++ ) {
+                hashCode = 31 * hashCode + chars[ i ];
+                power *= 31;
+            }
+            starts[ word ] = start;
+            lengths[ word ] = length;
+            hashes[ word ] = words.hash( word );
+            hashCodes[ word ] = hashCode;
+            gramHashCodes[ word ] = hashCode;
+            powers[ word ] = power;
+        }
+        int tokens = count;
+        for( int size = 2; size <= wordGrams; size++ ) {
+            for( int first = 0; first + size <= count; first++ ) {
+                int last = first + size - 1;
+                // hash code of the previous n-gram, a space and the last word
+                int hashCode = ( gramHashCodes[ first ] * 31 + ' ' ) *
+                    powers[ last ] + hashCodes[ last ];
+                gramHashCodes[ first ] = hashCode;
+                starts[ tokens ] = starts[ first ];
+                lengths[ tokens ] = starts[ last ] + lengths[ last ] -
+                    starts[ first ];
+                hashes[ tokens ] = TermDictionary.mix( hashCode );
+                tokens++;
+            }
+        }
+        if( characterGrams > 0 ) {
+            tokens = characterGrams( count, end, tokens );
+        }
+        return tokens;
+    }
+
+    /**
+     * adds the character n-grams of the words, copying them after the words
+     * with the mark before each one
+     * @param count number of words
+     * @param end position after the last word
+     * @param tokens number of tokens already added
+     * @return the number of tokens with the character n-grams
+     */
+    private int characterGrams( int count, int end, int tokens ) {
+        char[] text = this.text;
+        int size = characterGrams;
+        int power = 1;
+        for( int i = 1; i < size; i++ ) {
+            power *= 31;
+        }
+        // the mark is the first character, so it's multiplied by 31^size
+        int mark = CHARACTER_GRAM_MARK * power * 31;
+        int written = end;
+        for( int word = 0; word < count; word++ ) {
+            int start = words.start( word );
+            int length = words.length( word );
+            int hashCode = 0;
+            for( int i = start; i < start + length; i++ ) {
+                hashCode = 31 * hashCode + text[ i ];
+                if( i - start >= size ) {
+                    hashCode -= 31 * power * text[ i - size ];
+                }
+                if( i - start >= size - 1 ) {
+                    starts[ tokens ] = written;
+                    lengths[ tokens ] = size + 1;
+                    hashes[ tokens ] = TermDictionary.mix( mark + hashCode );
+                    tokens++;
+                    text[ written ] = CHARACTER_GRAM_MARK;
+                    System.arraycopy( text, i - size + 1, text, written + 1,
+                        size );
+                    written += size + 1;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    @Override
+    public char[] text() {
+        return characterGrams > 0 ? text : words.text();
+    }
+
+    @Override
+    public int start( int token ) {
+        return starts[ token ];
+    }
+
+    @Override
+    public int length( int token ) {
+        return lengths[ token ];
+    }
+
+    @Override
+    public int hash( int token ) {
+        return hashes[ token ];
+    }
+
+    /**
+     * grows the arrays of the tokens so they take a number of tokens
+     * @param capacity the number of tokens
+     */
+    private void ensureCapacity( int capacity ) {
+        if( capacity > starts.length ) {
+            int length = Math.max( capacity, starts.length * 2 );
+            starts = Arrays.copyOf( starts, length );
+            lengths = Arrays.copyOf( lengths, length );
+            hashes = Arrays.copyOf( hashes, length );
+            hashCodes = Arrays.copyOf( hashCodes, length );
+            gramHashCodes = Arrays.copyOf( gramHashCodes, length );
+            powers = Arrays.copyOf( powers, length );
+        }
+    }
+}
@@ -16,12 +16,20 @@
  * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
  */
 
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Naive Bayes classification program
@@ -29,6 +37,41 @@ import java.util.regex.Pattern;
  */
 public class NaiveBayes {
 
+    /**
+     * characters the cache may keep for each entry, the length of a long
+     * tweet
+     */
+    private static final long CACHE_CHARS_PER_ENTRY = 280;
+    
+    /**
+     * the largest number of words of the n-grams of the trained classifiers
+     */
+    private static int wordGrams = 1;
+    
+    /**
+     * the number of characters of the character n-grams of the trained
+     * classifiers, zero for none
+     */
+    private static int characterGrams = 0;
+    
+    /**
+     * the arena of the trained classifiers, or null to train them on the
+     * heap
+     */
+    private static OffHeapMemory memory = null;
+    
+    /**
+     * indicates if -c stops scoring a text once its classification is
+     * settled
+     */
+    private static boolean earlyExit = false;
+    
+    /**
+     * seconds between the publications of the examples posted to -s, zero
+     * if -s doesn't train
+     */
+    private static int publishSeconds = 0;
+
     /**
      * prints argument error and exit the program
      */
@@ -39,10 +82,10 @@ public class NaiveBayes {
     
     /**
      * prints parser error and exit the program
-     * @param line the line where the error was found
+     * @param e the error, with the line and file where it was found
      */
-    private static void printLineError( int line ) {
-        System.out.printf( "Line %d is incorrect\n", line );
+    private static void printLineError( InputFormatException e ) {
+        System.out.println( e.getMessage() );
         System.exit( 1 );
     }
     
@@ -63,109 +106,621 @@ public class NaiveBayes {
             printArgumentError();
         }
         if( args[ 0 ].equals( "-t" ) ) {
-            if( args.length != 3 ) {
+            if( args.length != 3 && args.length != 4 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-b" ) ) {
+            if( args.length != 4 && args.length != 5 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-g" ) ) {
+            if( args.length != 4 && args.length != 5 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-p" ) ) {
+            if( args.length != 5 && args.length != 6 ) {
                 printArgumentError();
             }
         } else if( args[ 0 ].equals( "-c" ) ) {
-            if( args.length != 4 ) {
+            if( args.length < 4 || args.length > 6 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-s" ) ) {
+            if( args.length < 3 || args.length > 5 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-l" ) ) {
+            if( args.length < 3 || args.length > 6 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-k" ) ) {
+            if( args.length != 3 && args.length != 4 ) {
                 printArgumentError();
             }
         } else if( args[ 0 ].equals( "-a" ) ) {
             if( args.length != 3 ) {
                 printArgumentError();
             }
+        } else if( args[ 0 ].equals( "-i" ) ) {
+            if( args.length != 3 && args.length != 4 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-m" ) ) {
+            if( args.length < 3 ) {
+                printArgumentError();
+            }
+        } else if( args[ 0 ].equals( "-e" ) ) {
+            if( args.length != 3 ) {
+                printArgumentError();
+            }
         } else {
             printArgumentError();
         }
     }
     
     /**
-     * train the Naive Bayes classifier with the training file
-     * @param classifier the Naive Bayes classifier
-     * @param path the training file path
+     * enables the metrics if their period was passed before the mode,
+     * printing them on the standard error periodically and once more when
+     * the program ends
+     * @param args the arguments
+     * @return the arguments without the metrics' period
+     */
+    private static String[] metricsArgument( String[] args ) {
+        if( args.length < 2 || !args[ 0 ].equals( "-v" ) ) {
+            return args;
+        }
+        int seconds = positiveArgument( args[ 1 ] );
+        Metrics metrics = Metrics.get();
+        Metrics.enable();
+        metrics.startDumping( seconds, TimeUnit.SECONDS, System.err );
+        long start = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+            double elapsed = ( System.nanoTime() - start ) / 1e9;
+            System.err.print( metrics.report( ( metrics.getDocumentsTrained() +
+                metrics.getDocumentsClassified() ) / elapsed,
+                metrics.getTokens() / elapsed ) );
+        } ) );
+        return Arrays.copyOfRange( args, 2, args.length );
+    }
+    
+    /**
+     * sets the n-grams of the trained classifiers if they were passed before
+     * the mode
+     * @param args the arguments
+     * @return the arguments without the n-grams
      */
-    private static void trainClassifier( NaiveBayesClassifier classifier, 
-        String path ) {
+    private static String[] nGramsArgument( String[] args ) {
+        if( args.length < 3 || !args[ 0 ].equals( "-n" ) ) {
+            return args;
+        }
+        wordGrams = positiveArgument( args[ 1 ] );
         try {
-            Scanner trainingScanner = new Scanner( new File( path ) );
-            int line = 1;
-
-            while( trainingScanner.hasNext() ) {
-                
-                // variables to do a regex search
-                String lineRead = trainingScanner.nextLine();
-                Pattern numberPattern = Pattern.compile( "(\\d)," );
-                Pattern textPattern = Pattern.compile( "\"(.*)\"" );
-                Matcher numberMatcher = numberPattern.matcher( lineRead );
-                Matcher textMatcher = textPattern.matcher( lineRead );
-
-                // parses the file training the classifier
-                if( numberMatcher.find() && textMatcher.find() ) {
-                    
-                    // negative example
-                    if( numberMatcher.group( 1 ).equals( "0" ) ) {
-                        classifier.setNegativeExample( textMatcher.group( 1 ) );
-                    // positive example
-                    } else if( numberMatcher.group( 1 ).equals( "1" ) ) {
-                        classifier.setPositiveExample( textMatcher.group( 1 ) );
-                    // error
-                    } else {
-                        printLineError( line );
-                    }
-                // error
+            characterGrams = Integer.parseInt( args[ 2 ] );
+        } catch( NumberFormatException e ) {
+            printArgumentError();
+        }
+        if( characterGrams < 0 ) {
+            printArgumentError();
+        }
+        return Arrays.copyOfRange( args, 3, args.length );
+    }
+    
+    /**
+     * makes the trained classifiers keep their words and counts off the heap
+     * if the memory budget was passed before the mode
+     * @param args the arguments
+     * @return the arguments without the memory budget and spill directory
+     */
+    private static String[] offHeapArgument( String[] args ) {
+        if( args.length < 3 || !args[ 0 ].equals( "-o" ) ) {
+            return args;
+        }
+        long budget = positiveArgument( args[ 1 ] ) * ( 1L << 20 );
+        memory = new OffHeapMemory( budget, args[ 2 ] );
+        return Arrays.copyOfRange( args, 3, args.length );
+    }
+    
+    /**
+     * makes -c stop scoring each text once its classification is settled,
+     * if it was asked before the mode
+     * @param args the arguments
+     * @return the arguments without the early exit
+     */
+    private static String[] earlyExitArgument( String[] args ) {
+        if( args.length < 2 || !args[ 0 ].equals( "-d" ) ) {
+            return args;
+        }
+        earlyExit = true;
+        return Arrays.copyOfRange( args, 1, args.length );
+    }
+    
+    /**
+     * makes -s train the object with the examples posted to it, publishing
+     * them periodically, if their period was passed before the mode
+     * @param args the arguments
+     * @return the arguments without the publications' period
+     */
+    private static String[] liveArgument( String[] args ) {
+        if( args.length < 2 || !args[ 0 ].equals( "-w" ) ) {
+            return args;
+        }
+        publishSeconds = positiveArgument( args[ 1 ] );
+        return Arrays.copyOfRange( args, 2, args.length );
+    }
+    
+    /**
+     * returns the factory of the classifiers trained by -t and -k, which
+     * are off the heap if a memory budget was passed
+     * @return the factory of the classifiers
+     */
+    private static Supplier< NaiveBayesClassifier > plainFactory() {
+        if( memory == null ) {
+            return withNGrams( NaiveBayesClassifier::new );
+        }
+        return withNGrams( () -> NaiveBayesClassifier.offHeap( memory ) );
+    }
+    
+    /**
+     * releases the arena of the trained classifiers, if there is one
+     */
+    private static void closeMemory() {
+        if( memory != null ) {
+            memory.close();
+        }
+    }
+    
+    /**
+     * makes the classifiers of a factory count the n-grams passed on the
+     * arguments
+     * @param factory creates the empty classifiers
+     * @return the factory of the classifiers with n-grams
+     */
+    private static Supplier< NaiveBayesClassifier > withNGrams(
+        Supplier< NaiveBayesClassifier > factory ) {
+        return () -> factory.get().withNGrams( wordGrams, characterGrams );
+    }
+    
+    /**
+     * returns the number of threads passed on the arguments
+     * @param args the arguments
+     * @param index position of the number of threads on the arguments
+     * @return the number of threads, or the number of processors if it
+     * wasn't passed
+     */
+    private static int threadsArgument( String[] args, int index ) {
+        if( args.length <= index ) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int threads = Integer.parseInt( args[ index ] );
+            if( threads < 1 ) {
+                printArgumentError();
+            }
+            return threads;
+        } catch( NumberFormatException e ) {
+            printArgumentError();
+            return 0;
+        }
+    }
+    
+    /**
+     * returns a positive number passed on the arguments
+     * @param argument the argument with the number
+     * @return the number
+     */
+    private static int positiveArgument( String argument ) {
+        try {
+            int number = Integer.parseInt( argument );
+            if( number < 1 ) {
+                printArgumentError();
+            }
+            return number;
+        } catch( NumberFormatException e ) {
+            printArgumentError();
+            return 0;
+        }
+    }
+    
+    /**
+     * train a Naive Bayes classifier with the training file
+     * @param path the training file path, or a directory or glob of them
+     * @param threads number of threads training the classifier and reading
+     * the files
+     * @param factory creates the empty classifiers that are trained
+     * @return the classifier trained
+     */
+    private static NaiveBayesClassifier trainClassifier( String path,
+        int threads, Supplier< NaiveBayesClassifier > factory ) {
+        ChunkReader reader = null;
+        try {
+            reader = ChunkReader.open( path, true, threads );
+        } catch( IOException e ) {
+            printFileError( path );
+        }
+        try {
+            ParallelTrainer trainer = new ParallelTrainer( threads, factory );
+            Metrics.get().watch( trainer::size, trainer::estimatedBytes );
+            return trainer.train( reader );
+        } catch( InputFormatException e ) {
+            printLineError( e );
+        } catch( IOException e ) {
+            printFileError( path );
+        } catch( IllegalArgumentException e ) {
+            System.out.printf( "File %s can't be trained: %s\n", path,
+                e.getMessage() );
+            System.exit( 1 );
+        } finally {
+            try {
+                reader.close();
+            } catch( IOException e ) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * train a multi-class Naive Bayes classifier with the training file
+     * @param path the training file path, or a directory or glob of them
+     * @param classes number of classes, the labels go from 0 to classes - 1
+     * @param threads number of threads training the classifier and reading
+     * the files
+     * @return the classifier trained
+     */
+    private static MultiClassClassifier trainMultiClass( String path,
+        int classes, int threads ) {
+        ChunkReader reader = null;
+        try {
+            reader = ChunkReader.open( path, true, threads );
+        } catch( IOException e ) {
+            printFileError( path );
+        }
+        try {
+            return new MultiClassTrainer( threads, classes ).train( reader );
+        } catch( InputFormatException e ) {
+            printLineError( e );
+        } catch( IOException e ) {
+            printFileError( path );
+        } finally {
+            try {
+                reader.close();
+            } catch( IOException e ) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * merges classifiers trained on different parts of a corpus
+     * @param paths the paths of the classifiers
+     * @return the classifier with the training of all of them
+     */
+    private static NaiveBayesClassifier mergeClassifiers( String[] paths ) {
+        NaiveBayesClassifier naiveBayes = null;
+        for( String path : paths ) {
+            NaiveBayesClassifier loaded = readObject( path, "merged" );
+            try {
+                if( naiveBayes == null ) {
+                    naiveBayes = loaded;
                 } else {
-                    printLineError( line );
+                    naiveBayes.merge( loaded );
                 }
-                line++;
+            } catch( IllegalArgumentException e ) {
+                System.out.printf( "Object %s can't be merged: %s\n", path,
+                    e.getMessage() );
+                System.exit( 1 );
             }
-        } catch( FileNotFoundException e ) {
+        }
+        return naiveBayes;
+    }
+    
+    /**
+     * reads an object with the training of its log, exiting the program if
+     * it doesn't exist or can't be read, as an object with more than two
+     * classes
+     * @param path the object's path
+     * @param action what is done with the object, for the error message
+     * @return the object
+     */
+    private static NaiveBayesClassifier readObject( String path,
+        String action ) {
+        try {
+            return CheckpointLog.read( path );
+        } catch( NoSuchFileException e ) {
             printFileError( path );
+        } catch( IOException e ) {
+            System.out.printf( "Object %s can't be %s: %s\n", path, action,
+                e.getMessage() );
+            System.exit( 1 );
+        }
+        return null;
+    }
+    
+    /**
+     * adds the training of a file to an object, appending it to the object's
+     * log instead of saving the whole object again
+     * @param path the object's path
+     * @param trainingPath the training file path
+     * @param threads number of threads training the classifier
+     */
+    private static void checkpointTraining( String path, String trainingPath,
+        int threads ) {
+        try( CheckpointLog checkpoints = new CheckpointLog( path ) ) {
+            NaiveBayesClassifier naiveBayes = null;
+            try {
+                naiveBayes = checkpoints.open();
+            } catch( NoSuchFileException e ) {
+                printFileError( path );
+            } catch( IOException e ) {
+                System.out.printf( "Object %s can't be trained: %s\n", path,
+                    e.getMessage() );
+                System.exit( 1 );
+            }
+            // the delta maps the words as the object does, hashed or not
+            NaiveBayesClassifier object = naiveBayes;
+            NaiveBayesClassifier delta = trainClassifier( trainingPath,
+                threads, object::emptyLike );
+            try {
+                naiveBayes.merge( delta );
+            } catch( IllegalArgumentException e ) {
+                System.out.printf( "Object %s can't be trained: %s\n", path,
+                    e.getMessage() );
+                System.exit( 1 );
+            }
+            checkpoints.append( delta );
+            if( checkpoints.needsCompaction() ) {
+                checkpoints.compact( naiveBayes );
+            }
+        } catch( IOException e ) {
+            printFileError( path + CheckpointLog.SUFFIX );
         }
     }
     
+    /**
+     * returns the model that will classify the texts, which may be a saved
+     * classifier or a mapped model
+     * @param path the path of the model
+     * @return the model that will classify the texts
+     * @throws IOException if the model can't be read
+     */
+    private static TextClassifier loadModel( String path ) throws IOException {
+        if( ModelFormat.isMultiClass( path ) ) {
+            System.out.printf( "Object %s has more than two classes, it can " +
+                "only be used by -c\n", path );
+            System.exit( 1 );
+        }
+        int magic;
+        try( DataInputStream input = new DataInputStream(
+            new FileInputStream( path ) ) ) {
+            magic = input.readInt();
+        }
+        if( magic == MappedModel.MAGIC ) {
+            MappedModel model = MappedModel.open( path );
+            Metrics.get().watch( model::size, model::estimatedBytes );
+            return model;
+        }
+        FrozenModel model = CheckpointLog.read( path ).freeze();
+        Metrics.get().watch( model::size, model::estimatedBytes );
+        return model;
+    }
+    
     /**
      * classifies the texts of a file
      * @param classifier the Naive Bayes classifier
-     * @param inputFilePath file that will be classified
+     * @param inputFilePath file that will be classified, or a directory or
+     * glob of them
      * @param outputFile file where the classification will be printed
+     * @param threads number of threads classifying the texts and reading
+     * the files
      */
-    private static void classify( NaiveBayesClassifier classifier, 
-        String inputFilePath, String outputFile ) {
+    private static void classify( TextClassifier classifier, 
+        String inputFilePath, String outputFile, int threads ) {
+        classify( new BatchClassifier( classifier, threads, earlyExit ),
+            inputFilePath, outputFile, threads );
+    }
+    
+    /**
+     * classifies the texts of a file
+     * @param classifier classifies the texts on many threads
+     * @param inputFilePath file that will be classified, or a directory or
+     * glob of them
+     * @param outputFile file where the classification will be printed
+     * @param threads number of threads reading the files
+     */
+    private static void classify( BatchClassifier classifier,
+        String inputFilePath, String outputFile, int threads ) {
+        ChunkReader reader = null;
         try {
-            Scanner trainingScanner = new Scanner( new File( inputFilePath ) );
-            PrintWriter writer = new PrintWriter( outputFile );
-            int line = 1;
-
-            while( trainingScanner.hasNext() ) {
-                // variables to do a regex search
-                String lineRead = trainingScanner.nextLine();
-                Pattern textPattern = Pattern.compile( "\"(.*)\"" );
-                Matcher textMatcher = textPattern.matcher( lineRead );
-
-                // parses the file classifying it
-                if( textMatcher.find() ) {
-                    int classification = 
-                        classifier.classify( textMatcher.group( 1 ) );
-                    if( classification == NaiveBayesClassifier.TRUE ) {
-                        double positiveProbability = 
-                            classifier.chanceOfPositive();
-                        writer.println( "" + 1 + "," + positiveProbability );
-                    } else {
-                        double negativeProbability =
-                            classifier.chanceOfNegative();
-                        writer.println( "" + 0 + "," + negativeProbability );
-                    }
-                } else {
-                    printLineError( line );
+            reader = ChunkReader.open( inputFilePath, false, threads );
+        } catch( IOException e ) {
+            printFileError( inputFilePath );
+        }
+        try( PrintWriter writer = new PrintWriter( new BufferedWriter(
+            new FileWriter( outputFile ) ) ) ) {
+            classifier.classify( reader, writer );
+        } catch( InputFormatException e ) {
+            printLineError( e );
+        } catch( IOException e ) {
+            printFileError( inputFilePath + " or " + outputFile );
+        } finally {
+            try {
+                reader.close();
+            } catch( IOException e ) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * puts a cache in front of a classifier if its size was passed on the
+     * arguments
+     * @param classifier the classifier
+     * @param args the arguments
+     * @param index position of the cache's size on the arguments
+     * @return the classifier, behind a cache if its size was passed
+     */
+    private static TextClassifier cacheArgument( TextClassifier classifier,
+        String[] args, int index ) {
+        if( args.length <= index ) {
+            return classifier;
+        }
+        int entries = positiveArgument( args[ index ] );
+        return new CachingClassifier( classifier, entries,
+            entries * CACHE_CHARS_PER_ENTRY );
+    }
+    
+    /**
+     * serves the classification of texts over HTTP until the program is
+     * killed
+     * @param classifier the classifier that scores the texts
+     * @param port the port the server listens to
+     * @param threads number of scoring threads
+     */
+    private static void serve( TextClassifier classifier, int port,
+        int threads ) {
+        try {
+            ClassificationServer server = new ClassificationServer( classifier,
+                port, threads );
+            Runtime.getRuntime().addShutdownHook( new Thread( server::stop ) );
+            System.out.printf( "Serving on port %d\n", server.port() );
+        } catch( IOException e ) {
+            System.out.printf( "Port %d can't be used\n", port );
+            System.exit( 1 );
+        }
+    }
+    
+    /**
+     * serves the classification of texts over HTTP and trains the object
+     * with the examples posted to it until the program is killed. The
+     * examples are published periodically and appended to the object's log,
+     * and the ones not published yet are published when the program ends
+     * @param path the object's path
+     * @param args the arguments: the object, the port, and optionally the
+     * number of scoring threads and the cache's size
+     */
+    private static void serveLive( String path, String[] args ) {
+        int port = positiveArgument( args[ 2 ] );
+        int threads = threadsArgument( args, 3 );
+        CheckpointLog checkpoints = new CheckpointLog( path );
+        NaiveBayesClassifier naiveBayes = null;
+        try {
+            naiveBayes = checkpoints.open();
+        } catch( NoSuchFileException e ) {
+            printFileError( path );
+        } catch( IOException e ) {
+            System.out.printf( "Object %s can't be trained: %s\n", path,
+                e.getMessage() );
+            System.exit( 1 );
+        }
+        LiveClassifier live = new LiveClassifier( naiveBayes );
+        live.checkpointTo( checkpoints );
+        live.startPublishing( publishSeconds, TimeUnit.SECONDS );
+        try {
+            ClassificationServer server = new ClassificationServer(
+                cacheArgument( live, args, 4 ), live, port, threads );
+            Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+                server.stop();
+                live.close();
+                try {
+                    live.publish();
+                    checkpoints.close();
+                } catch( IOException | UncheckedIOException e ) {
+                    e.printStackTrace();
+                }
+            } ) );
+            System.out.printf( "Serving on port %d\n", server.port() );
+        } catch( IOException e ) {
+            System.out.printf( "Port %d can't be used\n", port );
+            System.exit( 1 );
+        }
+    }
+    
+    /**
+     * posts the lines of a classification file to a server, printing the
+     * throughput and latencies
+     * @param args the arguments: the server's address, the file, and
+     * optionally the number of clients, the seconds and the lines of each
+     * request
+     */
+    private static void generateLoad( String[] args ) {
+        int clients = args.length > 3 ? positiveArgument( args[ 3 ] ) : 8;
+        int seconds = args.length > 4 ? positiveArgument( args[ 4 ] ) : 10;
+        int lines = args.length > 5 ? positiveArgument( args[ 5 ] ) : 16;
+        try {
+            new LoadGenerator( args[ 1 ], args[ 2 ], lines ).run( clients,
+                seconds );
+        } catch( IOException e ) {
+            printFileError( args[ 2 ] + " or server " + args[ 1 ] );
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * cross-validates a training file, printing the outcome and time of
+     * each fold and the confusion matrix of all of them
+     * @param path the training file path, or a directory or glob of them
+     * @param folds number of folds
+     * @param threads number of threads training and scoring the folds and
+     * reading the files
+     */
+    private static void crossValidate( String path, int folds, int threads ) {
+        try {
+            CrossValidator.Fold[] outcomes =
+                new CrossValidator( folds, threads,
+                plainFactory() ).validate( () -> ChunkReader.open( path, true,
+                threads ) );
+            long[] total = new long[ 4 ];
+            System.out.println( "fold examples accuracy precision recall train_ms build_ms score_ms" );
+            for( CrossValidator.Fold fold : outcomes ) {
+                long[] matrix = { fold.getTruePositives(),
+                    fold.getFalsePositives(), fold.getFalseNegatives(),
+                    fold.getTrueNegatives() };
+                System.out.printf( "%d %d %s %.1f %.1f %.1f\n",
+                    fold.getIndex() + 1, matrix[ 0 ] + matrix[ 1 ] +
+                    matrix[ 2 ] + matrix[ 3 ], rates( matrix ),
+                    fold.getTrainNanos() / 1e6, fold.getBuildNanos() / 1e6,
+                    fold.getScoreNanos() / 1e6 );
+                for( int cell = 0; cell < 4; cell++ ) {
+                    total[ cell ] += matrix[ cell ];
                 }
-                line++;
             }
-            writer.close();
-        } catch( FileNotFoundException e ) {
-            printFileError( inputFilePath );
+            System.out.printf( "all %d %s\n", total[ 0 ] + total[ 1 ] +
+                total[ 2 ] + total[ 3 ], rates( total ) );
+            System.out.printf( "%10s %12s %12s\n", "", "predicted 1",
+                "predicted 0" );
+            System.out.printf( "%10s %12d %12d\n", "actual 1", total[ 0 ],
+                total[ 2 ] );
+            System.out.printf( "%10s %12d %12d\n", "actual 0", total[ 1 ],
+                total[ 3 ] );
+        } catch( InputFormatException e ) {
+            printLineError( e );
+        } catch( IOException e ) {
+            printFileError( path );
+        } catch( IllegalArgumentException e ) {
+            System.out.printf( "File %s can't be cross-validated: %s\n", path,
+                e.getMessage() );
+            System.exit( 1 );
         }
     }
     
+    /**
+     * returns the accuracy, precision and recall of a confusion matrix
+     * @param matrix the true positives, false positives, false negatives
+     * and true negatives
+     * @return the accuracy, precision and recall separated by spaces
+     */
+    private static String rates( long[] matrix ) {
+        long examples = matrix[ 0 ] + matrix[ 1 ] + matrix[ 2 ] + matrix[ 3 ];
+        long positives = matrix[ 0 ] + matrix[ 1 ];
+        long actual = matrix[ 0 ] + matrix[ 2 ];
+        return String.format( "%f %f %f",
+            ( double ) ( matrix[ 0 ] + matrix[ 3 ] ) / examples,
+            positives == 0 ? 0 : ( double ) matrix[ 0 ] / positives,
+            actual == 0 ? 0 : ( double ) matrix[ 0 ] / actual );
+    }
+    
     /**
      * avaliates classification comparing the classification file with the
      * answer
@@ -181,10 +736,10 @@ public class NaiveBayes {
 
             while( scanner1.hasNext() && scanner2.hasNext() ) {
                 amount++;
-                char classification1 = scanner1.nextLine().charAt( 0 );
-                char classification2 = scanner2.nextLine().charAt( 0 );
+                String classification1 = label( scanner1.nextLine() );
+                String classification2 = label( scanner2.nextLine() );
                 
-                if( classification1 == classification2 ) {
+                if( classification1.equals( classification2 ) ) {
                     right++;
                 }
             }
@@ -195,26 +750,141 @@ public class NaiveBayes {
         }
     }
 
+    /**
+     * returns the label of a line, which comes before its first comma, so
+     * classes with many digits are compared whole
+     * @param line a line of the classification or of the answer file
+     * @return the line's label
+     */
+    private static String label( String line ) {
+        int comma = line.indexOf( ',' );
+        return comma < 0 ? line : line.substring( 0, comma );
+    }
+
     /**
      * @param args the command line arguments
      */
     public static void main( String[] args ) {
+        args = metricsArgument( args );
+        args = nGramsArgument( args );
+        args = offHeapArgument( args );
+        if( memory != null && !args[ 0 ].equals( "-t" ) &&
+            !args[ 0 ].equals( "-k" ) ) {
+            printArgumentError();
+        }
+        args = earlyExitArgument( args );
+        if( earlyExit && !args[ 0 ].equals( "-c" ) ) {
+            printArgumentError();
+        }
+        args = liveArgument( args );
+        if( publishSeconds > 0 && !args[ 0 ].equals( "-s" ) ) {
+            printArgumentError();
+        }
         verifyArguments( args );
         
         if( args[ 0 ].equals( "-t" ) ) {
-            NaiveBayesClassifier naiveBayes = new NaiveBayesClassifier();
-            trainClassifier( naiveBayes, args[ 1 ] );
+            NaiveBayesClassifier naiveBayes =
+                trainClassifier( args[ 1 ], threadsArgument( args, 3 ),
+                plainFactory() );
+            NaiveBayesClassifier.saveClassifier( args[ 2 ], naiveBayes );
+            closeMemory();
+        } else if( args[ 0 ].equals( "-b" ) ) {
+            int buckets = positiveArgument( args[ 3 ] );
+            NaiveBayesClassifier naiveBayes = trainClassifier( args[ 1 ],
+                threadsArgument( args, 4 ),
+                withNGrams( () -> NaiveBayesClassifier.hashed( buckets ) ) );
+            NaiveBayesClassifier.saveClassifier( args[ 2 ], naiveBayes );
+        } else if( args[ 0 ].equals( "-g" ) ) {
+            int classes = positiveArgument( args[ 3 ] );
+            if( classes < 2 ) {
+                printArgumentError();
+            }
+            MultiClassClassifier classifier = trainMultiClass( args[ 1 ],
+                classes, threadsArgument( args, 4 ) );
+            try {
+                MultiClassClassifier.saveClassifier( args[ 2 ], classifier );
+            } catch( IOException e ) {
+                printFileError( args[ 2 ] );
+            }
+        } else if( args[ 0 ].equals( "-p" ) ) {
+            int threshold = positiveArgument( args[ 3 ] );
+            int maxWords = positiveArgument( args[ 4 ] );
+            if( maxWords < 2 ) {
+                printArgumentError();
+            }
+            NaiveBayesClassifier naiveBayes = trainClassifier( args[ 1 ],
+                threadsArgument( args, 5 ),
+                withNGrams( () -> NaiveBayesClassifier.pruned( threshold,
+                maxWords ) ) );
             NaiveBayesClassifier.saveClassifier( args[ 2 ], naiveBayes );
+        } else if( args[ 0 ].equals( "-k" ) ) {
+            crossValidate( args[ 1 ], positiveArgument( args[ 2 ] ),
+                threadsArgument( args, 3 ) );
+            closeMemory();
         } else if( args[ 0 ].equals( "-a" ) ) {
             avaliateClassification( args[ 1 ], args[ 2 ] );
+        } else if( args[ 0 ].equals( "-s" ) && publishSeconds > 0 ) {
+            serveLive( args[ 1 ], args );
+        } else if( args[ 0 ].equals( "-s" ) ) {
+            TextClassifier model = null;
+            try {
+                model = loadModel( args[ 1 ] );
+            } catch( IOException e ) {
+                printFileError( args[ 1 ] );
+            }
+            serve( cacheArgument( model, args, 4 ),
+                positiveArgument( args[ 2 ] ), threadsArgument( args, 3 ) );
+        } else if( args[ 0 ].equals( "-l" ) ) {
+            generateLoad( args );
+        } else if( args[ 0 ].equals( "-i" ) ) {
+            checkpointTraining( args[ 1 ], args[ 2 ], threadsArgument( args, 3 ) );
+        } else if( args[ 0 ].equals( "-m" ) ) {
+            NaiveBayesClassifier naiveBayes = mergeClassifiers(
+                Arrays.copyOfRange( args, 2, args.length ) );
+            NaiveBayesClassifier.saveClassifier( args[ 1 ], naiveBayes );
+        } else if( args[ 0 ].equals( "-e" ) ) {
+            NaiveBayesClassifier naiveBayes = readObject( args[ 1 ],
+                "exported" );
+            try {
+                MappedModel.write( args[ 2 ], naiveBayes.freeze() );
+            } catch( IOException e ) {
+                printFileError( args[ 2 ] );
+            } catch( IllegalArgumentException e ) {
+                System.out.printf( "Object %s can't be exported: %s\n",
+                    args[ 1 ], e.getMessage() );
+                System.exit( 1 );
+            }
         } else {
+            boolean multiClass = false;
+            try {
+                multiClass = ModelFormat.isMultiClass( args[ 1 ] );
+            } catch( IOException e ) {
+                printFileError( args[ 1 ] );
+            }
+            if( multiClass ) {
+                if( earlyExit || args.length > 5 ) {
+                    printArgumentError();
+                }
+                MultiClassModel model = null;
+                try {
+                    model = MultiClassClassifier.loadClassifier(
+                        args[ 1 ] ).freeze();
+                } catch( IOException e ) {
+                    printFileError( args[ 1 ] );
+                }
+                int threads = threadsArgument( args, 4 );
+                classify( new BatchClassifier( model, threads ), args[ 2 ],
+                    args[ 3 ], threads );
+                return;
+            }
+            TextClassifier model = null;
             try {
-                NaiveBayesClassifier naiveBayes = 
-                    NaiveBayesClassifier.loadClassifier( args[ 1 ] );
-                classify( naiveBayes, args[ 2 ], args[ 3 ] );
-            } catch( Exception e ) {
+                model = loadModel( args[ 1 ] );
+            } catch( IOException e ) {
                 printFileError( args[ 1 ] );
             }
+            classify( cacheArgument( model, args, 5 ), args[ 2 ], args[ 3 ],
+                threadsArgument( args, 4 ) );
         }
     }
 }
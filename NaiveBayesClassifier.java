@@ -16,18 +16,21 @@
  * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
  */
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Naive Bayes for text classification implementation
  * @author vitorcezar
  */
-public class NaiveBayesClassifier implements Serializable {
+public class NaiveBayesClassifier implements TextClassifier {
     
     /**
      * Bag of words for words information
@@ -45,37 +48,29 @@ public class NaiveBayesClassifier implements Serializable {
     private int numberNegativeExample;
     
     /**
-     * the chance of an example be false
+     * incremented whenever the training changes
      */
-    private double falseProbability;
+    private long version;
     
     /**
-     * the chance of an example be true
+     * the largest number of words of the n-grams, one for words only
      */
-    private double trueProbability;
-
-    /**
-     * counts the number of times the negative probability has crossed
-     * the limit value
-     */
-    private int limitOnNegative;
-
+    private int wordGrams;
+    
     /**
-     * counts the number of times the positive probability has crossed
-     * the limit value
+     * the number of characters of the character n-grams, zero for none
      */
-    private int limitOnPositive;
-
+    private int characterGrams;
+    
     /**
-     * a probability can't be less than this number
+     * result of the last example passed to classify
      */
-    private final static double LIMIT = 0.001;
-
+    private ClassificationResult lastResult;
+    
     /**
-     * the probability must be multiplied by this value if it's less
-     * than the limit value
+     * size of the buffers used to save and load classifiers
      */
-    private final static double MULTIPLICATION_ON_LIMIT = 1000;
+    private final static int BUFFER_SIZE = 1 << 16;
     
     /**
      * definition for invalid probability value
@@ -99,8 +94,150 @@ public class NaiveBayesClassifier implements Serializable {
         bagOfWords = new BagOfWords();
         numberNegativeExample = 0;
         numberPositiveExample = 0;
-        falseProbability = INVALID;
-        trueProbability = INVALID;
+        wordGrams = 1;
+        characterGrams = 0;
+        lastResult = null;
+    }
+    
+    /**
+     * creates a classifier that maps the words into a fixed number of
+     * buckets by their hashes instead of keeping them, so its memory doesn't
+     * grow with the vocabulary
+     * @param buckets number of buckets
+     * @return the classifier
+     */
+    public static NaiveBayesClassifier hashed( int buckets ) {
+        return new NaiveBayesClassifier( BagOfWords.hashed( buckets ), 0, 0 );
+    }
+    
+    /**
+     * creates a classifier whose words and counts are kept on an off-heap
+     * arena, for vocabularies too large for the heap. It can't be used once
+     * the arena is closed, so it must be saved before
+     * @param memory the arena where the words and counts are kept
+     * @return the classifier
+     */
+    public static NaiveBayesClassifier offHeap( OffHeapMemory memory ) {
+        return new NaiveBayesClassifier( BagOfWords.offHeap( memory ), 0, 0 );
+    }
+    
+    /**
+     * creates a classifier that only keeps the words that occurred a number
+     * of times, up to a maximum number of words. The other words are counted
+     * on a sketch of fixed size until they reach the threshold, and the
+     * least frequent words are evicted when the classifier is full
+     * @param threshold number of occurrences a word needs to be kept
+     * @param maxWords maximum number of words kept
+     * @return the classifier
+     */
+    public static NaiveBayesClassifier pruned( int threshold, int maxWords ) {
+        return new NaiveBayesClassifier( BagOfWords.pruned( threshold,
+            maxWords ), 0, 0 );
+    }
+    
+    /**
+     * creates a classifier that was already trained
+     * @param bagOfWords the words information
+     * @param numberPositiveExample the number of positive examples
+     * @param numberNegativeExample the number of negative examples
+     */
+    NaiveBayesClassifier( BagOfWords bagOfWords, int numberPositiveExample,
+        int numberNegativeExample ) {
+        this( bagOfWords, numberPositiveExample, numberNegativeExample, 1, 0 );
+    }
+    
+    /**
+     * creates a classifier that was already trained with n-grams
+     * @param bagOfWords the words and n-grams information
+     * @param numberPositiveExample the number of positive examples
+     * @param numberNegativeExample the number of negative examples
+     * @param wordGrams the largest number of words of an n-gram
+     * @param characterGrams the number of characters of the character
+     * n-grams, zero for none
+     */
+    NaiveBayesClassifier( BagOfWords bagOfWords, int numberPositiveExample,
+        int numberNegativeExample, int wordGrams, int characterGrams ) {
+        NGramTokenizer.verify( wordGrams, characterGrams );
+        this.bagOfWords = bagOfWords;
+        this.numberPositiveExample = numberPositiveExample;
+        this.numberNegativeExample = numberNegativeExample;
+        this.wordGrams = wordGrams;
+        this.characterGrams = characterGrams;
+        lastResult = null;
+    }
+    
+    /**
+     * makes an untrained classifier count the n-grams of the texts besides
+     * their words, so phrases as "not good" are taken into account. The
+     * n-grams are counted on the same table as the words
+     * @param wordGrams the largest number of words of an n-gram, one for
+     * words only
+     * @param characterGrams the number of characters of the character
+     * n-grams of the words, zero for none
+     * @return this classifier
+     */
+    public NaiveBayesClassifier withNGrams( int wordGrams,
+        int characterGrams ) {
+        NGramTokenizer.verify( wordGrams, characterGrams );
+        if( numberPositiveExample + numberNegativeExample > 0 ) {
+            throw new IllegalStateException( "the n-grams of a trained classifier can't change" );
+        }
+        this.wordGrams = wordGrams;
+        this.characterGrams = characterGrams;
+        return this;
+    }
+    
+    /**
+     * returns an untrained classifier that maps the words as this one does,
+     * with the same buckets if this one is hashed and the same n-grams, so
+     * its training can be merged into this one
+     * @return the untrained classifier
+     */
+    public NaiveBayesClassifier emptyLike() {
+        NaiveBayesClassifier classifier = bagOfWords.keepsWords() ?
+            new NaiveBayesClassifier() : hashed( bagOfWords.size() );
+        return classifier.withNGrams( wordGrams, characterGrams );
+    }
+    
+    /**
+     * returns the largest number of words of the n-grams
+     * @return one if the classifier only counts words
+     */
+    public int wordGrams() {
+        return wordGrams;
+    }
+    
+    /**
+     * returns the number of characters of the character n-grams
+     * @return zero if the classifier has no character n-grams
+     */
+    public int characterGrams() {
+        return characterGrams;
+    }
+    
+    /**
+     * returns the tokenizer of the current thread that splits the texts into
+     * the words and n-grams the classifier counts
+     * @return the tokenizer of the classifier for the current thread
+     */
+    @Override
+    public Tokenizer tokenizer() {
+        return tokenizer( wordGrams, characterGrams );
+    }
+    
+    /**
+     * returns the tokenizer of the current thread for some n-grams, which
+     * is WordTokenizer when there are only words
+     * @param wordGrams the largest number of words of an n-gram
+     * @param characterGrams the number of characters of the character
+     * n-grams
+     * @return the tokenizer for the current thread
+     */
+    static Tokenizer tokenizer( int wordGrams, int characterGrams ) {
+        if( wordGrams == 1 && characterGrams == 0 ) {
+            return WordTokenizer.local();
+        }
+        return NGramTokenizer.local( wordGrams, characterGrams );
     }
     
     /**
@@ -110,30 +247,32 @@ public class NaiveBayesClassifier implements Serializable {
      */
     public static void saveClassifier( String path, 
         NaiveBayesClassifier naiveBayes ) {
-        FileOutputStream fileOutputStream = null;
-	    ObjectOutputStream objectOutputStream = null;
-
-	    try {
-            fileOutputStream = new FileOutputStream( path );
-            objectOutputStream = new ObjectOutputStream( fileOutputStream );
-            objectOutputStream.writeObject( naiveBayes );
-        } catch( Exception ex ) {
-            ex.printStackTrace();
-        } finally {
-            if( fileOutputStream != null ) {
-                try {
-                    fileOutputStream.close();
-                } catch( IOException e ) {
-                    e.printStackTrace();
-                }
-            }
-            if( objectOutputStream != null ) {
-                try {
-                    objectOutputStream.close();
-                } catch( IOException e ) {
-                    e.printStackTrace();
-                }
-            }
+        saveClassifier( path, naiveBayes, false );
+    }
+    
+    /**
+     * saves this classifier for future classifications. The checkpoints
+     * appended to a classifier saved before on the same path are deleted,
+     * as they don't extend this one
+     * @param path the output's path
+     * @param naiveBayes the classifier that will be saved
+     * @param compress indicates if the model must be compressed
+     */
+    public static void saveClassifier( String path, 
+        NaiveBayesClassifier naiveBayes, boolean compress ) {
+        try( OutputStream outputStream = new BufferedOutputStream(
+            Channels.newOutputStream( FileChannel.open( Paths.get( path ),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING ) ), BUFFER_SIZE ) ) {
+            ModelFormat.write( naiveBayes, outputStream, compress );
+        } catch( IOException e ) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            CheckpointLog.discard( path );
+        } catch( IOException e ) {
+            e.printStackTrace();
         }
     }
     
@@ -141,17 +280,39 @@ public class NaiveBayesClassifier implements Serializable {
      * returns a NaiveBayes classifier
      * @param path the path of the classifier
      * @return a NaiveBayes classifier
+     * @throws IOException if the classifier can't be read
      */
     public static NaiveBayesClassifier loadClassifier( String path ) 
-        throws Exception {
-        FileInputStream fileInputStream = new FileInputStream( path );
-        ObjectInputStream outputInputStream = 
-            new ObjectInputStream( fileInputStream );
-        NaiveBayesClassifier naiveBayes =
-            ( NaiveBayesClassifier ) outputInputStream.readObject();
-        outputInputStream.close();
-        fileInputStream.close();
-        return naiveBayes;
+        throws IOException {
+        try( InputStream inputStream = new BufferedInputStream(
+            Channels.newInputStream( FileChannel.open( Paths.get( path ),
+            StandardOpenOption.READ ) ), BUFFER_SIZE ) ) {
+            return ModelFormat.read( inputStream );
+        }
+    }
+    
+    /**
+     * returns the words information of the classifier
+     * @return the words information of the classifier
+     */
+    BagOfWords getBagOfWords() {
+        return bagOfWords;
+    }
+    
+    /**
+     * returns the number of positive examples
+     * @return the number of positive examples
+     */
+    int getNumberPositiveExample() {
+        return numberPositiveExample;
+    }
+    
+    /**
+     * returns the number of negative examples
+     * @return the number of negative examples
+     */
+    int getNumberNegativeExample() {
+        return numberNegativeExample;
     }
     
     /**
@@ -159,8 +320,19 @@ public class NaiveBayesClassifier implements Serializable {
      * @param example example that will be added
      */
     public void setPositiveExample( String example ) {
+        setPositiveExample( example, tokenizer() );
+    }
+    
+    /**
+     * adds a positive training example to the classifier
+     * @param example example that will be added
+     * @param tokenizer the tokenizer that splits the example into words
+     */
+    public void setPositiveExample( CharSequence example,
+        Tokenizer tokenizer ) {
         numberPositiveExample++;
-        setExample( example, true );
+        version++;
+        setExample( example, tokenizer, true );
     }
     
     /**
@@ -168,56 +340,201 @@ public class NaiveBayesClassifier implements Serializable {
      * @param example example that will be added
      */
     public void setNegativeExample( String example ) {
+        setNegativeExample( example, tokenizer() );
+    }
+    
+    /**
+     * adds a negative training example to the classifier
+     * @param example example that will be added
+     * @param tokenizer the tokenizer that splits the example into words
+     */
+    public void setNegativeExample( CharSequence example,
+        Tokenizer tokenizer ) {
         numberNegativeExample++;
-        setExample( example, false );
+        version++;
+        setExample( example, tokenizer, false );
+    }
+    
+    /**
+     * adds the training of another classifier to this one, so classifiers
+     * trained on different parts of a corpus can be combined without
+     * training them again
+     * @param other the classifier whose training will be added, it must be
+     * hashed with the same buckets if this one is hashed and count the same
+     * n-grams
+     */
+    public void merge( NaiveBayesClassifier other ) {
+        verifyNGrams( other );
+        bagOfWords.merge( other.bagOfWords );
+        numberPositiveExample += other.numberPositiveExample;
+        numberNegativeExample += other.numberNegativeExample;
+        version++;
     }
     
     /**
-     * returns the example's classification
+     * verifies that another classifier counts the same n-grams as this one
+     * @param other the other classifier
+     */
+    private void verifyNGrams( NaiveBayesClassifier other ) {
+        if( wordGrams != other.wordGrams ||
+            characterGrams != other.characterGrams ) {
+            throw new IllegalArgumentException( "the classifiers count different n-grams" );
+        }
+    }
+    
+    /**
+     * removes the training of another classifier from this one, so a model
+     * without a part of the corpus can be taken from the model of the whole
+     * corpus without training it again
+     * @param other the classifier whose training will be removed, it must
+     * have been merged into this one and neither can be pruned
+     */
+    public void subtract( NaiveBayesClassifier other ) {
+        verifyNGrams( other );
+        bagOfWords.subtract( other.bagOfWords );
+        numberPositiveExample -= other.numberPositiveExample;
+        numberNegativeExample -= other.numberNegativeExample;
+        version++;
+    }
+    
+    /**
+     * returns the example's classification, keeping its chances for
+     * chanceOfPositive and chanceOfNegative. As it modifies the classifier,
+     * evaluate must be used when the classifier is shared between threads
      * @param stringToClassify example that will be evaluated
      * @return the example's classification
      */
     public int classify( String stringToClassify ) {
-        limitOnPositive = 0;
-        limitOnNegative = 0;
-        int numberExamples = numberPositiveExample + numberNegativeExample;
-        double percentTrue = ( double ) ( numberPositiveExample ) /
-            ( double ) ( numberExamples );
-        double percentFalse = ( double ) ( numberNegativeExample ) /
-            ( double ) ( numberExamples );
-        falseProbability = probability( stringToClassify, false ) *
-            percentFalse;
-        trueProbability = probability( stringToClassify, true ) *
-            percentTrue;
-
-        /* normalizes based on the number of times each probability has passed
-        the limit */
-        int difference = limitOnPositive - limitOnNegative;
-        if( difference > 0 ) {
-            falseProbability *= Math.pow( MULTIPLICATION_ON_LIMIT, difference );
-        } else if( difference < 0 ) {
-            trueProbability *= Math.pow( MULTIPLICATION_ON_LIMIT, -difference );
+        lastResult = evaluate( stringToClassify );
+        return lastResult.getClassification();
+    }
+    
+    /**
+     * returns the example's classification and chances. It doesn't modify
+     * the classifier, so many threads can evaluate examples at the same time
+     * while there is no training
+     * @param stringToClassify example that will be evaluated
+     * @return the example's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( String stringToClassify ) {
+        return evaluate( stringToClassify, tokenizer() );
+    }
+    
+    /**
+     * returns the example's classification and chances
+     * @param stringToClassify example that will be evaluated
+     * @param tokenizer the tokenizer that splits the example into words, it
+     * must be the one used on the training
+     * @return the example's classification and chances
+     */
+    @Override
+    public ClassificationResult evaluate( CharSequence stringToClassify,
+        Tokenizer tokenizer ) {
+        boolean metrics = Metrics.enabled();
+        long start = metrics ? System.nanoTime() : 0;
+        double logRatio = 0;
+        int unknown = 0;
+        int tokens = tokenizer.tokenize( stringToClassify );
+        long tokenized = metrics ? System.nanoTime() : 0;
+        for( int token = 0; token < tokens; token++ ) {
+            int id = bagOfWords.indexOf( tokenizer, token );
+            if( id != TermDictionary.NOT_FOUND ) {
+                logRatio += bagOfWords.logRatio( id );
+            } else {
+                unknown++;
+            }
         }
-
-        // returns the classification
-        if( trueProbability > falseProbability ) {
-            return TRUE;
-        } else {
-            return FALSE;
+        long found = metrics ? System.nanoTime() : 0;
+        ClassificationResult result =
+            ClassificationResult.fromLogOdds( priorLogOdds() + logRatio );
+        if( metrics ) {
+            Metrics.get().classified( start, tokenized, found, tokens, unknown );
         }
+        return result;
     }
     
     /**
-     * returns the chance that the example is negative
-     * @return the chance that the example is positive or negative
+     * returns a number that changes whenever the classifier is trained
+     * @return the version of the classifier
+     */
+    @Override
+    public long version() {
+        return version;
+    }
+    
+    /**
+     * returns the number of different words the classifier was trained with
+     * @return the number of words of the classifier
+     */
+    public int size() {
+        return bagOfWords.size();
+    }
+    
+    /**
+     * returns an estimate of the bytes taken by the classifier
+     * @return the bytes taken by the classifier
+     */
+    public long estimatedBytes() {
+        return bagOfWords.estimatedBytes();
+    }
+    
+    /**
+     * returns an immutable model of the classifier, where the log-ratio of
+     * every word is computed once. The model is what should be used to
+     * classify once the training is over, as further training doesn't change
+     * it
+     * @return the model of the classifier
+     */
+    public FrozenModel freeze() {
+        FrozenModel model = bagOfWords.freeze( priorLogOdds() );
+        if( wordGrams == 1 && characterGrams == 0 ) {
+            return model;
+        }
+        return model.withNGrams( wordGrams, characterGrams );
+    }
+    
+    /**
+     * returns the model this classifier would have with the training of
+     * another one removed, without removing it from a copy. The model shares
+     * the words of this classifier, so it mustn't be trained while the model
+     * is used
+     * @param other the classifier whose training is left out, it must have
+     * been merged into this one and neither can be pruned
+     * @return the model of the classifier without the other's training
+     */
+    public FrozenModel freezeWithout( NaiveBayesClassifier other ) {
+        verifyNGrams( other );
+        FrozenModel model = bagOfWords.freezeWithout( other.bagOfWords,
+            Math.log( numberPositiveExample - other.numberPositiveExample ) -
+            Math.log( numberNegativeExample - other.numberNegativeExample ) );
+        if( wordGrams == 1 && characterGrams == 0 ) {
+            return model;
+        }
+        return model.withNGrams( wordGrams, characterGrams );
+    }
+    
+    /**
+     * returns the logarithm of the ratio between the positive and negative
+     * priors
+     * @return the log-ratio of the priors
+     */
+    double priorLogOdds() {
+        return Math.log( numberPositiveExample ) -
+            Math.log( numberNegativeExample );
+    }
+    
+    /**
+     * returns the chance that the last classified example is positive
+     * @return the chance that the example is positive
      */
     public double chanceOfPositive() {
         return chance( true );
     }
     
     /**
-     * returns the chance that the example is negative
-     * @return the chance that the example is positive or negative
+     * returns the chance that the last classified example is negative
+     * @return the chance that the example is negative
      */
     public double chanceOfNegative() {
         return chance( false );
@@ -229,66 +546,38 @@ public class NaiveBayesClassifier implements Serializable {
      * @return the chance that the example is positive or negative
      */
     private double chance( boolean positive ) {
-        double total = trueProbability + falseProbability;
-        if( total < 0 ) {
+        if( lastResult == null ) {
             return INVALID;
         } else {
             if( positive ) {
-                return trueProbability / total;
+                return lastResult.chanceOfPositive();
             } else {
-                return falseProbability / total;
+                return lastResult.chanceOfNegative();
             }
         }
     }
     
-    /**
-     * returns the probability that the example occurs as a positive or a 
-     * negative one
-     * @param stringToClassify the example that will be evaluated
-     * @param positive returns if the probability to be returned is the chance
-     * to be positive
-     * @return the probability that the example occurs as a positive or a 
-     * negative one
-     */
-    private double probability( String stringToClassify, boolean positive ) {
-        double returnProbability = 1;
-        String lowerCase = stringToClassify.toLowerCase();
-        String[] words = lowerCase.split( " " );
-        
-        if( positive ) {
-            for( String word : words ) {
-                returnProbability *= bagOfWords.probabilityAsPositive( word );
-                if( returnProbability < LIMIT ) {
-                    returnProbability *= MULTIPLICATION_ON_LIMIT;
-                    limitOnPositive++;
-                }
-            }
-        } else {
-            for( String word : words ) {
-                returnProbability *= bagOfWords.probabilityAsNegative( word );
-                if( returnProbability < LIMIT ) {
-                    returnProbability *= MULTIPLICATION_ON_LIMIT;
-                    limitOnNegative++;
-                }
-            }
-        }
-        return returnProbability;
-    }
-    
     /**
      * adds a training example to the classifier
      * @param example example that will be added
+     * @param tokenizer the tokenizer that splits the example into words
      * @param positive indicates if the example is positive
      */
-    private void setExample( String example, boolean positive ) {
-        String lowerCase = example.toLowerCase();
-        String[] words = lowerCase.split( " " );
-        for( String word : words ) {
+    private void setExample( CharSequence example, Tokenizer tokenizer,
+        boolean positive ) {
+        boolean metrics = Metrics.enabled();
+        long start = metrics ? System.nanoTime() : 0;
+        int tokens = tokenizer.tokenize( example );
+        long tokenized = metrics ? System.nanoTime() : 0;
+        for( int token = 0; token < tokens; token++ ) {
             if( positive ) {
-                bagOfWords.setPositive( word );
+                bagOfWords.setPositive( tokenizer, token );
             } else {
-                bagOfWords.setNegative( word );
+                bagOfWords.setNegative( tokenizer, token );
             }
         }
+        if( metrics ) {
+            Metrics.get().trained( start, tokenized, tokens );
+        }
     }
 }
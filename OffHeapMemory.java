@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * arena of memory outside the heap, so structures with millions of entries
+ * neither fill the heap nor give the collector anything to trace. The
+ * buffers are direct while their total is within a budget, and after that
+ * they are mapped from temporary files, which the operating system writes
+ * to the disk when it needs the memory. The files are deleted as soon as
+ * they are mapped, so nothing is left behind if the program dies. Buffers
+ * are released when they are freed or when the arena is closed, without
+ * waiting for the collector; they must not be used after that. The
+ * direct buffers are also bounded by -XX:MaxDirectMemorySize, which
+ * defaults to the maximum heap, and past it they are mapped as well
+ * @author vitorcezar
+ */
+public class OffHeapMemory implements Closeable {
+
+    /**
+     * releases a direct or mapped buffer at once, or null if the JDK
+     * doesn't allow it and the collector must release them
+     */
+    private static final Method INVOKE_CLEANER;
+
+    /**
+     * the object the cleaner is invoked on
+     */
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class< ? > unsafeClass = Class.forName( "sun.misc.Unsafe" );
+            Field field = unsafeClass.getDeclaredField( "theUnsafe" );
+            field.setAccessible( true );
+            unsafe = field.get( null );
+            invokeCleaner = unsafeClass.getMethod( "invokeCleaner",
+                ByteBuffer.class );
+        } catch( ReflectiveOperationException | RuntimeException e ) {
+            invokeCleaner = null;
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    /**
+     * bytes of direct buffers allowed before the buffers are mapped from
+     * files
+     */
+    private final long budget;
+
+    /**
+     * directory of the files of the mapped buffers
+     */
+    private final Path spillDirectory;
+
+    /**
+     * the buffers that weren't freed, and if each one is mapped
+     */
+    private final Map< ByteBuffer, Boolean > buffers;
+
+    /**
+     * bytes of the direct buffers that weren't freed
+     */
+    private long directBytes;
+
+    /**
+     * bytes of the mapped buffers that weren't freed
+     */
+    private long mappedBytes;
+
+    /**
+     * indicates if the arena was closed
+     */
+    private boolean closed;
+
+    /**
+     * class constructor
+     * @param budget bytes of direct buffers allowed before the buffers are
+     * mapped from files
+     * @param spillDirectory directory of the files of the mapped buffers
+     */
+    public OffHeapMemory( long budget, String spillDirectory ) {
+        if( budget < 0 ) {
+            throw new IllegalArgumentException( "the budget can't be negative" );
+        }
+        this.budget = budget;
+        this.spillDirectory = Paths.get( spillDirectory );
+        buffers = new IdentityHashMap<>();
+    }
+
+    /**
+     * allocates a zeroed buffer, on the native byte order
+     * @param bytes size of the buffer
+     * @return the buffer
+     * @throws UncheckedIOException if the buffer must be mapped and its file
+     * can't be created
+     */
+    public synchronized ByteBuffer allocate( long bytes ) {
+        if( closed ) {
+            throw new IllegalStateException( "the memory was closed" );
+        }
+        if( bytes > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException( "buffers can't be larger than 2 GB" );
+        }
+        ByteBuffer buffer = null;
+        if( directBytes + bytes <= budget ) {
+            try {
+                buffer = ByteBuffer.allocateDirect( ( int ) bytes );
+            } catch( OutOfMemoryError e ) {
+                // MaxDirectMemorySize is below the budget, the buffer spills
+            }
+        }
+        boolean mapped = buffer == null;
+        if( mapped ) {
+            buffer = map( bytes );
+            mappedBytes += bytes;
+        } else {
+            directBytes += bytes;
+        }
+        buffer.order( ByteOrder.nativeOrder() );
+        buffers.put( buffer, mapped );
+        return buffer;
+    }
+
+    /**
+     * maps a buffer from a temporary file, which is deleted at once
+     * @param bytes size of the buffer
+     * @return the buffer
+     */
+    private ByteBuffer map( long bytes ) {
+        try {
+            Path file = Files.createTempFile( spillDirectory, "naivebayes",
+                ".spill" );
+            try( FileChannel channel = FileChannel.open( file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+                return channel.map( FileChannel.MapMode.READ_WRITE, 0, bytes );
+            } finally {
+                Files.delete( file );
+            }
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * releases a buffer allocated by the arena
+     * @param buffer the buffer, it must not be used anymore
+     */
+    public synchronized void free( ByteBuffer buffer ) {
+        Boolean mapped = buffers.remove( buffer );
+        if( mapped != null ) {
+            if( mapped ) {
+                mappedBytes -= buffer.capacity();
+            } else {
+                directBytes -= buffer.capacity();
+            }
+            release( buffer );
+        }
+    }
+
+    /**
+     * returns the bytes of the direct buffers in use
+     * @return the bytes of the direct buffers
+     */
+    public synchronized long directBytes() {
+        return directBytes;
+    }
+
+    /**
+     * returns the bytes of the mapped buffers in use
+     * @return the bytes of the mapped buffers
+     */
+    public synchronized long mappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * releases every buffer of the arena
+     */
+    @Override
+    public synchronized void close() {
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        for( ByteBuffer buffer : buffers.keySet() ) {
+            release( buffer );
+        }
+        buffers.clear();
+        directBytes = 0;
+        mappedBytes = 0;
+    }
+
+    /**
+     * releases the memory of a buffer at once, if the JDK allows it
+     * @param buffer the buffer
+     */
+    private static void release( ByteBuffer buffer ) {
+        if( INVOKE_CLEANER != null ) {
+            try {
+                INVOKE_CLEANER.invoke( UNSAFE, buffer );
+            } catch( ReflectiveOperationException e ) {
+                // the collector releases it
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * open addressing dictionary kept on an off-heap arena, so a vocabulary of
+ * tens of millions of terms doesn't create a string for each of them. Each
+ * term has a record with its hash, its length and the position of its
+ * characters, which are kept on chunks that grow as the terms are added. A
+ * string is only created when a term is taken from its id
+ * @author vitorcezar
+ */
+public class OffHeapTerms implements TermIndex {
+
+    /**
+     * initial number of slots, it must be a power of two
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * the table is doubled when it's filled above this fraction
+     */
+    private static final double LOAD_FACTOR = 0.5;
+
+    /**
+     * bytes of a record: the hash, the length, the chunk and the position
+     * of the characters on the chunk
+     */
+    private static final int RECORD_SIZE = 16;
+
+    /**
+     * bytes of the first chunk of characters
+     */
+    private static final int INITIAL_CHUNK = 1 << 16;
+
+    /**
+     * the chunks of characters double up to this number of bytes
+     */
+    private static final int MAX_CHUNK = 1 << 26;
+
+    /**
+     * the arena where the dictionary is kept
+     */
+    private final OffHeapMemory memory;
+
+    /**
+     * hash table whose slots keep the term id plus one, zero is an empty slot
+     */
+    private ByteBuffer slots;
+
+    /**
+     * number of slots, it's a power of two
+     */
+    private int slotCount;
+
+    /**
+     * the records of the terms indexed by their ids
+     */
+    private ByteBuffer records;
+
+    /**
+     * the chunks of characters, only the last one takes new terms
+     */
+    private final List< ByteBuffer > chunks;
+
+    /**
+     * position of the next term on the last chunk
+     */
+    private int chunkPosition;
+
+    /**
+     * number of terms on the dictionary
+     */
+    private int size;
+
+    /**
+     * class constructor
+     * @param memory the arena where the dictionary is kept
+     */
+    public OffHeapTerms( OffHeapMemory memory ) {
+        this.memory = memory;
+        slotCount = INITIAL_CAPACITY;
+        slots = memory.allocate( 4L * slotCount );
+        records = memory.allocate( ( long ) RECORD_SIZE * slotCount / 2 );
+        chunks = new ArrayList<>();
+        chunks.add( memory.allocate( INITIAL_CHUNK ) );
+        chunkPosition = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean keepsTerms() {
+        return true;
+    }
+
+    @Override
+    public String term( int id ) {
+        int record = id * RECORD_SIZE;
+        int length = records.getInt( record + 4 );
+        ByteBuffer chunk = chunks.get( records.getInt( record + 8 ) );
+        int position = records.getInt( record + 12 );
+        char[] chars = new char[ length ];
+        for( int i = 0; i < length; i++ ) {
+            chars[ i ] = chunk.getChar( position + 2 * i );
+        }
+        return new String( chars );
+    }
+
+    @Override
+    public int find( String term ) {
+        char[] chars = term.toCharArray();
+        return find( chars, 0, chars.length, TermDictionary.hash( term ) );
+    }
+
+    @Override
+    public int find( char[] chars, int offset, int length, int hash ) {
+        int mask = slotCount - 1;
+        for( int slot = hash & mask; ; slot = ( slot + 1 ) & mask ) {
+            int id = slots.getInt( slot << 2 ) - 1;
+            if( id < 0 ) {
+                return TermDictionary.NOT_FOUND;
+            }
+            if( matches( id, chars, offset, length, hash ) ) {
+                return id;
+            }
+        }
+    }
+
+    @Override
+    public int add( String term ) {
+        char[] chars = term.toCharArray();
+        return add( chars, 0, chars.length, TermDictionary.hash( term ) );
+    }
+
+    @Override
+    public int add( char[] chars, int offset, int length, int hash ) {
+        int mask = slotCount - 1;
+        int slot = hash & mask;
+        for( ; ; slot = ( slot + 1 ) & mask ) {
+            int id = slots.getInt( slot << 2 ) - 1;
+            if( id < 0 ) {
+                break;
+            }
+            if( matches( id, chars, offset, length, hash ) ) {
+                return id;
+            }
+        }
+        return insert( chars, offset, length, hash, slot );
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = 4L * slotCount + records.capacity();
+        for( ByteBuffer chunk : chunks ) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * adds a new term to the dictionary
+     * @param chars the buffer with the term's characters
+     * @param offset position of the term on the buffer
+     * @param length number of characters of the term
+     * @param hash the term's hash
+     * @param slot the empty slot found for the term
+     * @return the term's id
+     */
+    private int insert( char[] chars, int offset, int length, int hash,
+        int slot ) {
+        if( length > MAX_CHUNK / 2 ) {
+            throw new IllegalArgumentException( "a term of " + length +
+                " characters is longer than the " + MAX_CHUNK / 2 +
+                " characters a term can have off the heap" );
+        }
+        int id = size++;
+        if( ( long ) size * RECORD_SIZE > records.capacity() ) {
+            if( 2L * records.capacity() > Integer.MAX_VALUE ) {
+                throw new IllegalStateException( "too many terms" );
+            }
+            ByteBuffer grown = memory.allocate( 2L * records.capacity() );
+            grown.put( 0, records, 0, records.capacity() );
+            memory.free( records );
+            records = grown;
+        }
+        ByteBuffer chunk = chunks.get( chunks.size() - 1 );
+        if( chunkPosition + 2 * length > chunk.capacity() ) {
+            // a term longer than the doubled chunk gets a chunk of its size
+            int capacity = Math.max( Math.min( chunk.capacity() * 2,
+                MAX_CHUNK ), 2 * length );
+            chunk = memory.allocate( capacity );
+            chunks.add( chunk );
+            chunkPosition = 0;
+        }
+        for( int i = 0; i < length; i++ ) {
+            chunk.putChar( chunkPosition + 2 * i, chars[ offset + i ] );
+        }
+        int record = id * RECORD_SIZE;
+        records.putInt( record, hash );
+        records.putInt( record + 4, length );
+        records.putInt( record + 8, chunks.size() - 1 );
+        records.putInt( record + 12, chunkPosition );
+        chunkPosition += 2 * length;
+        slots.putInt( slot << 2, id + 1 );
+        if( size > slotCount * LOAD_FACTOR ) {
+            rehash( slotCount * 2 );
+        }
+        return id;
+    }
+
+    /**
+     * rebuilds the hash table with a new number of slots
+     * @param capacity the new number of slots
+     */
+    private void rehash( int capacity ) {
+        ByteBuffer newSlots = memory.allocate( 4L * capacity );
+        int mask = capacity - 1;
+        for( int id = 0; id < size; id++ ) {
+            int slot = records.getInt( id * RECORD_SIZE ) & mask;
+            while( newSlots.getInt( slot << 2 ) != 0 ) {
+                slot = ( slot + 1 ) & mask;
+            }
+            newSlots.putInt( slot << 2, id + 1 );
+        }
+        memory.free( slots );
+        slots = newSlots;
+        slotCount = capacity;
+    }
+
+    /**
+     * indicates if a term has the characters of a buffer
+     * @param id the term's id
+     * @param chars the buffer
+     * @param offset position of the characters on the buffer
+     * @param length number of characters
+     * @param hash the hash of the characters
+     * @return true if the term has the buffer's characters
+     */
+    private boolean matches( int id, char[] chars, int offset, int length,
+        int hash ) {
+        int record = id * RECORD_SIZE;
+        if( records.getInt( record ) != hash ||
+            records.getInt( record + 4 ) != length ) {
+            return false;
+        }
+        ByteBuffer chunk = chunks.get( records.getInt( record + 8 ) );
+        int position = records.getInt( record + 12 );
+        for( int i = 0; i < length; i++ ) {
+            if( chunk.getChar( position + 2 * i ) != chars[ offset + i ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
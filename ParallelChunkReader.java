@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * reads the records of many files on a number of reader threads, which
+ * decompress and parse the files at the same time. Each file has its own
+ * queue of chunks and the chunks are returned file after file, so the
+ * records keep the order of the files and of their lines. The reader
+ * threads read the next files ahead while the queues have room
+ * @author vitorcezar
+ */
+public class ParallelChunkReader extends ChunkReader {
+
+    /**
+     * number of chunks a reader may have waiting on the queue of its file
+     */
+    private static final int CHUNKS_PER_FILE = 4;
+
+    /**
+     * chunk put on a queue after the last chunk of its file
+     */
+    private static final TextRecord[] END = new TextRecord[ 0 ];
+
+    /**
+     * the files that are read
+     */
+    private final List< Path > files;
+
+    /**
+     * the chunks of each file, or null for the files already returned
+     */
+    private final List< BlockingQueue< TextRecord[] > > queues;
+
+    /**
+     * the error found on each file, or null
+     */
+    private final IOException[] failures;
+
+    /**
+     * the reader threads
+     */
+    private final ExecutorService readers;
+
+    /**
+     * the file whose chunks are being returned
+     */
+    private int current;
+
+    /**
+     * class constructor, the reader threads start reading at once
+     * @param files the files that will be read, on their order
+     * @param labelled indicates if the lines start with a label
+     * @param readers number of threads reading the files at the same time
+     */
+    public ParallelChunkReader( List< Path > files, boolean labelled,
+        int readers ) {
+        if( readers < 1 ) {
+            throw new IllegalArgumentException( "readers must be positive" );
+        }
+        this.files = files;
+        queues = new ArrayList<>();
+        failures = new IOException[ files.size() ];
+        this.readers = Executors.newFixedThreadPool( Math.min( readers,
+            files.size() ), runnable -> {
+                Thread thread = new Thread( runnable, "file-reader" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        for( int file = 0; file < files.size(); file++ ) {
+            queues.add( new ArrayBlockingQueue<>( CHUNKS_PER_FILE ) );
+        }
+        // the pool takes the files on their order, so a file is only waited
+        // for after the files before it were read
+        for( int file = 0; file < files.size(); file++ ) {
+            int index = file;
+            this.readers.execute( () -> readFile( index, labelled ) );
+        }
+        this.readers.shutdown();
+        current = 0;
+    }
+
+    /**
+     * reads the next chunk of records
+     * @return the records read, or null if every file is over
+     * @throws IOException if a file can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    @Override
+    public TextRecord[] next() throws IOException {
+        try {
+            while( current < files.size() ) {
+                TextRecord[] chunk = queues.get( current ).take();
+                if( chunk != END ) {
+                    return chunk;
+                }
+                if( failures[ current ] != null ) {
+                    throw failures[ current ];
+                }
+                queues.set( current++, null );
+            }
+            return null;
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "reading interrupted", e );
+        }
+    }
+
+    /**
+     * returns the error of a record of the last chunk read that isn't
+     * valid, with the file the chunk was read from
+     * @param record the record, from the last chunk read
+     * @return the error of the record's line and file
+     */
+    @Override
+    public InputFormatException incorrect( TextRecord record ) {
+        return new InputFormatException( files.get( current ).toString(),
+            record.getLine() );
+    }
+
+    /**
+     * stops the reader threads, the files not read yet are ignored
+     */
+    @Override
+    public void close() {
+        readers.shutdownNow();
+    }
+
+    /**
+     * reads a file putting its chunks on its queue, on a reader thread
+     * @param index the file's position on the list
+     * @param labelled indicates if the lines start with a label
+     */
+    private void readFile( int index, boolean labelled ) {
+        Path path = files.get( index );
+        BlockingQueue< TextRecord[] > queue = queues.get( index );
+        try {
+            try( ChunkReader chunks = new ChunkReader( RecordReader.open(
+                path, labelled ) ) ) {
+                TextRecord[] records = chunks.next();
+                while( records != null ) {
+                    queue.put( records );
+                    records = chunks.next();
+                }
+            } catch( InputFormatException e ) {
+                failures[ index ] = new InputFormatException( path.toString(),
+                    e.getLine() );
+            } catch( IOException e ) {
+                failures[ index ] = e;
+            }
+            queue.put( END );
+        } catch( InterruptedException e ) {
+            // the reader was closed, so nobody waits for the chunks
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * trains a classifier on many threads. The calling thread splits the corpus
+ * into chunks of lines, each worker trains its own classifier with the chunks
+ * it receives and the partial classifiers are merged at the end
+ * @author vitorcezar
+ */
+public class ParallelTrainer {
+
+    /**
+     * number of chunks each worker may have waiting to be trained, it keeps
+     * the memory bounded when the reader is faster than the workers
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * creates the empty classifiers that are trained and merged
+     */
+    private final Supplier< NaiveBayesClassifier > factory;
+
+    /**
+     * the classifiers trained by the workers
+     */
+    private final List< NaiveBayesClassifier > partials;
+
+    /**
+     * the classifier of each worker thread
+     */
+    private final ThreadLocal< NaiveBayesClassifier > partial;
+
+    /**
+     * class constructor
+     * @param threads number of worker threads
+     */
+    public ParallelTrainer( int threads ) {
+        this( threads, NaiveBayesClassifier::new );
+    }
+
+    /**
+     * creates a trainer of classifiers that are created by a factory, as
+     * the hashed or the pruned ones
+     * @param threads number of worker threads
+     * @param factory creates the empty classifiers, all of them must be
+     * created the same way so they can be merged
+     */
+    public ParallelTrainer( int threads,
+        Supplier< NaiveBayesClassifier > factory ) {
+        if( threads < 1 ) {
+            throw new IllegalArgumentException( "threads must be positive" );
+        }
+        this.threads = threads;
+        this.factory = factory;
+        partials = new ArrayList<>();
+        partial = ThreadLocal.withInitial( this::newPartial );
+    }
+
+    /**
+     * trains a classifier with every record of the corpus
+     * @param reader the corpus, one example for each line
+     * @return the classifier trained with the corpus
+     * @throws IOException if the corpus can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    public NaiveBayesClassifier train( RecordReader reader )
+        throws IOException {
+        return train( new ChunkReader( reader ) );
+    }
+
+    /**
+     * trains a classifier with every record of the chunks of a corpus, as
+     * the ones of many files read at the same time
+     * @param chunks the corpus, one example for each record
+     * @return the classifier trained with the corpus
+     * @throws IOException if the corpus can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    public NaiveBayesClassifier train( ChunkReader chunks )
+        throws IOException {
+        feed( chunks, threads, label -> label == NaiveBayesClassifier.FALSE ||
+            label == NaiveBayesClassifier.TRUE, this::trainChunk );
+
+        // the partial classifiers are merged into a single one
+        NaiveBayesClassifier classifier = factory.get();
+        for( NaiveBayesClassifier trained : partials ) {
+            classifier.merge( trained );
+        }
+        return classifier;
+    }
+
+    /**
+     * returns the number of words of the largest partial classifier, which
+     * is a lower bound of the vocabulary while the corpus is trained
+     * @return the number of words of the largest partial classifier
+     */
+    public synchronized int size() {
+        int size = 0;
+        for( NaiveBayesClassifier trained : partials ) {
+            size = Math.max( size, trained.size() );
+        }
+        return size;
+    }
+
+    /**
+     * returns an estimate of the bytes taken by the partial classifiers
+     * @return the bytes taken by the partial classifiers
+     */
+    public synchronized long estimatedBytes() {
+        long bytes = 0;
+        for( NaiveBayesClassifier trained : partials ) {
+            bytes += trained.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * hands every chunk of a corpus to a pool of workers, returning once all
+     * of them were trained. It is shared by the trainers of the two-class
+     * and of the multi-class classifiers
+     * @param chunks the corpus, one example for each record
+     * @param threads number of worker threads
+     * @param validLabel accepts the labels the classifier can be trained with
+     * @param trainer trains the classifier of the current thread with a chunk
+     * @throws IOException if the corpus can't be read
+     * @throws InputFormatException if a record has a label that isn't valid
+     */
+    static void feed( ChunkReader chunks, int threads, IntPredicate validLabel,
+        Consumer< TextRecord[] > trainer ) throws IOException {
+        AtomicReference< RuntimeException > failure = new AtomicReference<>();
+        ExecutorService workers = Executors.newFixedThreadPool( threads );
+        Semaphore pending = new Semaphore( threads * CHUNKS_PER_THREAD );
+        try {
+            TextRecord[] records = chunks.next();
+            while( records != null && failure.get() == null ) {
+                verifyLabels( chunks, records, validLabel );
+                TextRecord[] chunk = records;
+                pending.acquire();
+                workers.execute( () -> {
+                    try {
+                        trainer.accept( chunk );
+                    } catch( RuntimeException e ) {
+                        failure.compareAndSet( null, e );
+                    } finally {
+                        pending.release();
+                    }
+                } );
+                records = chunks.next();
+            }
+            workers.shutdown();
+            workers.awaitTermination( Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "training interrupted", e );
+        } finally {
+            workers.shutdownNow();
+        }
+        if( failure.get() != null ) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * verifies that every record of a chunk has a label the classifier can
+     * be trained with
+     * @param chunks the corpus the chunk was read from
+     * @param records the chunk's records
+     * @param validLabel accepts the labels the classifier can be trained with
+     * @throws InputFormatException if a record has another target, with the
+     * file of the record when the corpus has many
+     */
+    private static void verifyLabels( ChunkReader chunks, TextRecord[] records,
+        IntPredicate validLabel ) throws InputFormatException {
+        for( TextRecord record : records ) {
+            if( !validLabel.test( record.getLabel() ) ) {
+                throw chunks.incorrect( record );
+            }
+        }
+    }
+
+    /**
+     * trains the classifier of the current thread with a chunk
+     * @param records the chunk's records
+     */
+    private void trainChunk( TextRecord[] records ) {
+        NaiveBayesClassifier classifier = partial.get();
+        for( TextRecord record : records ) {
+            if( record.getLabel() == NaiveBayesClassifier.TRUE ) {
+                classifier.setPositiveExample( record.getText() );
+            } else {
+                classifier.setNegativeExample( record.getText() );
+            }
+        }
+    }
+
+    /**
+     * creates the classifier of a worker thread
+     * @return the classifier of a worker thread
+     */
+    private synchronized NaiveBayesClassifier newPartial() {
+        NaiveBayesClassifier classifier = factory.get();
+        partials.add( classifier );
+        return classifier;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * streaming parser of the training and classification files. The bytes are
+ * read on large blocks and each line is scanned once: the label is the
+ * number before the first comma and the text is everything between the
+ * first and the last quote. Only the text is decoded, as UTF-8. Blank lines
+ * are only accepted at the end of the file
+ * @author vitorcezar
+ */
+public class RecordReader implements Closeable {
+
+    /**
+     * size of the blocks read from the channel
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * size of the compressed blocks read from gzip files
+     */
+    private static final int COMPRESSED_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * the channel that is being read
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * indicates if the lines start with a label
+     */
+    private final boolean labelled;
+
+    /**
+     * bytes read from the channel
+     */
+    private byte[] bytes;
+
+    /**
+     * the bytes as a buffer the channel can fill
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * position of the next line on the bytes
+     */
+    private int position;
+
+    /**
+     * number of bytes read
+     */
+    private int limit;
+
+    /**
+     * indicates if the channel is over
+     */
+    private boolean endOfInput;
+
+    /**
+     * number of lines read until now
+     */
+    private int line;
+
+    /**
+     * class constructor
+     * @param channel the channel that will be read
+     * @param labelled indicates if the lines start with a label, as the
+     * training files do
+     */
+    public RecordReader( ReadableByteChannel channel, boolean labelled ) {
+        this( channel, labelled, BUFFER_SIZE );
+    }
+
+    /**
+     * creates a reader with a buffer of a given size, as the small ones used
+     * for short inputs. The buffer still grows for the lines that don't fit
+     * @param channel the channel that will be read
+     * @param labelled indicates if the lines start with a label
+     * @param bufferSize initial size of the buffer
+     */
+    public RecordReader( ReadableByteChannel channel, boolean labelled,
+        int bufferSize ) {
+        this.channel = channel;
+        this.labelled = labelled;
+        bytes = new byte[ Math.max( bufferSize, 1 ) ];
+        buffer = ByteBuffer.wrap( bytes );
+        position = 0;
+        limit = 0;
+        endOfInput = false;
+        line = 0;
+    }
+
+    /**
+     * opens a file
+     * @param path the file's path
+     * @param labelled indicates if the lines start with a label
+     * @return the reader of the file
+     * @throws IOException if the file can't be opened
+     */
+    public static RecordReader open( String path, boolean labelled )
+        throws IOException {
+        return open( Paths.get( path ), labelled );
+    }
+
+    /**
+     * opens a file, decompressing it while it's read if its name ends with
+     * .gz
+     * @param path the file's path
+     * @param labelled indicates if the lines start with a label
+     * @return the reader of the file
+     * @throws IOException if the file can't be opened or isn't on the gzip
+     * format
+     */
+    public static RecordReader open( Path path, boolean labelled )
+        throws IOException {
+        if( !path.toString().endsWith( ".gz" ) ) {
+            return new RecordReader( FileChannel.open( path,
+                StandardOpenOption.READ ), labelled );
+        }
+        InputStream input = Files.newInputStream( path );
+        try {
+            return new RecordReader( Channels.newChannel( new GZIPInputStream(
+                input, COMPRESSED_BUFFER_SIZE ) ), labelled );
+        } catch( IOException e ) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * reads the next record
+     * @return the record read, or null if the file is over
+     * @throws IOException if the file can't be read
+     * @throws InputFormatException if a line isn't on the expected format
+     */
+    public TextRecord next() throws IOException {
+        int blankLine = 0;
+        while( true ) {
+            int end = findLineEnd();
+            if( end < 0 ) {
+                return null;
+            }
+            line++;
+            int start = position;
+            position = end + 1;
+            if( end > start && bytes[ end - 1 ] == '\r' ) {
+                end--;
+            }
+            if( isBlank( start, end ) ) {
+                if( blankLine == 0 ) {
+                    blankLine = line;
+                }
+            } else if( blankLine != 0 ) {
+                throw new InputFormatException( blankLine );
+            } else {
+                return parse( start, end );
+            }
+        }
+    }
+
+    /**
+     * returns the records as a stream, the errors are thrown as
+     * UncheckedIOException
+     * @return the records of the file
+     */
+    public Stream< TextRecord > stream() {
+        Iterator< TextRecord > iterator = new Iterator< TextRecord >() {
+
+            /**
+             * the record that will be returned next
+             */
+            private TextRecord nextRecord = read();
+
+            @Override
+            public boolean hasNext() {
+                return nextRecord != null;
+            }
+
+            @Override
+            public TextRecord next() {
+                if( nextRecord == null ) {
+                    throw new NoSuchElementException();
+                }
+                TextRecord record = nextRecord;
+                nextRecord = read();
+                return record;
+            }
+
+            /**
+             * reads a record
+             * @return the record read, or null if the file is over
+             */
+            private TextRecord read() {
+                try {
+                    return RecordReader.this.next();
+                } catch( IOException e ) {
+                    throw new UncheckedIOException( e );
+                }
+            }
+        };
+        return StreamSupport.stream( Spliterators.spliteratorUnknownSize(
+            iterator, Spliterator.ORDERED | Spliterator.NONNULL ), false );
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * parses a line
+     * @param start position of the line's first byte
+     * @param end position after the line's last byte
+     * @return the line's record
+     * @throws InputFormatException if the line isn't on the expected format
+     */
+    private TextRecord parse( int start, int end )
+        throws InputFormatException {
+        int label = TextRecord.NO_LABEL;
+        int index = start;
+        if( labelled ) {
+            while( index < end && bytes[ index ] == ' ' ) {
+                index++;
+            }
+            label = 0;
+            int digits = 0;
+            while( index < end && bytes[ index ] >= '0' &&
+                bytes[ index ] <= '9' && digits < 9 ) {
+                label = label * 10 + bytes[ index++ ] - '0';
+                digits++;
+            }
+            while( index < end && bytes[ index ] == ' ' ) {
+                index++;
+            }
+            if( digits == 0 || index == end || bytes[ index ] != ',' ) {
+                throw new InputFormatException( line );
+            }
+            index++;
+        }
+
+        // the text is between the first and the last quote
+        int firstQuote = index;
+        while( firstQuote < end && bytes[ firstQuote ] != '"' ) {
+            firstQuote++;
+        }
+        int lastQuote = end - 1;
+        while( lastQuote > firstQuote && bytes[ lastQuote ] != '"' ) {
+            lastQuote--;
+        }
+        if( lastQuote <= firstQuote ) {
+            throw new InputFormatException( line );
+        }
+        return new TextRecord( line, label, new String( bytes, firstQuote + 1,
+            lastQuote - firstQuote - 1, StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * returns the position of the end of the next line, reading more bytes
+     * when the line isn't complete on the buffer
+     * @return the position of the line's newline, which may be the limit
+     * when the file doesn't end with a newline, or -1 if the file is over
+     * @throws IOException if the file can't be read
+     */
+    private int findLineEnd() throws IOException {
+        int scanned = position;
+        while( true ) {
+            for( int i = scanned; i < limit; i++ ) {
+                if( bytes[ i ] == '\n' ) {
+                    return i;
+                }
+            }
+            if( endOfInput ) {
+                return position < limit ? limit : -1;
+            }
+            scanned = limit - position;
+            fill();
+        }
+    }
+
+    /**
+     * moves the remaining bytes to the beginning of the buffer and reads
+     * more bytes, growing the buffer when a line doesn't fit on it
+     * @throws IOException if the file can't be read
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if( remaining == bytes.length ) {
+            byte[] larger = new byte[ bytes.length * 2 ];
+            System.arraycopy( bytes, position, larger, 0, remaining );
+            bytes = larger;
+            buffer = ByteBuffer.wrap( bytes );
+        } else {
+            System.arraycopy( bytes, position, bytes, 0, remaining );
+        }
+        position = 0;
+        limit = remaining;
+        buffer.clear();
+        buffer.position( limit );
+        int read = channel.read( buffer );
+        while( read == 0 ) {
+            read = channel.read( buffer );
+        }
+        if( read < 0 ) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * indicates if a line only has whitespace
+     * @param start position of the line's first byte
+     * @param end position after the line's last byte
+     * @return true if the line only has whitespace
+     */
+    private boolean isBlank( int start, int end ) {
+        for( int i = start; i < end; i++ ) {
+            if( bytes[ i ] != ' ' && bytes[ i ] != '\t' ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
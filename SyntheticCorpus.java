@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * deterministic generator of labelled examples, used to benchmark the
+ * classifier on vocabularies of any size without a real corpus. The same
+ * seed always generates the same examples. The words are drawn so the
+ * frequency of a word is close to the inverse of its rank, as on natural
+ * text, and each word leans to the positive or negative class
+ * @author vitorcezar
+ */
+public class SyntheticCorpus {
+
+    /**
+     * letters used to spell the words
+     */
+    private static final char[] LETTERS =
+        "abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    /**
+     * chance that a word is drawn from the words of the example's class
+     */
+    private static final double CLASS_BIAS = 0.7;
+
+    /**
+     * number of distinct words
+     */
+    private final int vocabulary;
+
+    /**
+     * the source of the random numbers
+     */
+    private final SplittableRandom random;
+
+    /**
+     * position of the next word of the sweep over the vocabulary
+     */
+    private int sweep;
+
+    /**
+     * class constructor
+     * @param vocabulary number of distinct words
+     * @param seed the seed of the random numbers
+     */
+    public SyntheticCorpus( int vocabulary, long seed ) {
+        if( vocabulary < 2 ) {
+            throw new IllegalArgumentException( "vocabulary must be at least 2" );
+        }
+        this.vocabulary = vocabulary;
+        random = new SplittableRandom( seed );
+        sweep = 0;
+    }
+
+    /**
+     * returns the number of distinct words
+     * @return the number of distinct words
+     */
+    public int vocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * returns the word that has a rank
+     * @param rank the word's rank, from zero to the vocabulary minus one
+     * @return the word that has the rank
+     */
+    public static String word( int rank ) {
+        StringBuilder builder = new StringBuilder( 8 );
+        int value = rank;
+        do {
+            builder.append( LETTERS[ value % LETTERS.length ] );
+            value /= LETTERS.length;
+        } while( value > 0 );
+        return builder.toString();
+    }
+
+    /**
+     * indicates the class a word leans to
+     * @param rank the word's rank
+     * @return true if the word leans to the positive class
+     */
+    public static boolean isPositiveWord( int rank ) {
+        return ( TermDictionary.mix( rank ) & 1 ) == 1;
+    }
+
+    /**
+     * draws the label of the next example
+     * @return true if the next example must be positive
+     */
+    public boolean nextLabel() {
+        return random.nextBoolean();
+    }
+
+    /**
+     * generates an example
+     * @param words number of words of the example
+     * @param positive indicates if the example is positive
+     * @return the example's text
+     */
+    public String example( int words, boolean positive ) {
+        StringBuilder builder = new StringBuilder( words * 6 );
+        for( int i = 0; i < words; i++ ) {
+            if( i > 0 ) {
+                builder.append( ' ' );
+            }
+            builder.append( word( nextRank( positive ) ) );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * generates an example with the next words of the vocabulary, so every
+     * word shows up once the vocabulary has been swept
+     * @param words number of words of the example
+     * @return the example's text
+     */
+    public String sweepExample( int words ) {
+        StringBuilder builder = new StringBuilder( words * 6 );
+        for( int i = 0; i < words; i++ ) {
+            if( i > 0 ) {
+                builder.append( ' ' );
+            }
+            builder.append( word( sweep ) );
+            sweep = ( sweep + 1 ) % vocabulary;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * writes a training file, in the format read by the program
+     * @param path the file's path
+     * @param examples number of examples
+     * @param words number of words of each example
+     * @throws IOException if the file can't be written
+     */
+    public void writeTrainingFile( String path, int examples, int words )
+        throws IOException {
+        try( BufferedWriter writer = Files.newBufferedWriter( Paths.get( path ),
+            StandardCharsets.UTF_8 ) ) {
+            for( int i = 0; i < examples; i++ ) {
+                boolean positive = nextLabel();
+                writer.write( positive ? "1,\"" : "0,\"" );
+                writer.write( example( words, positive ) );
+                writer.write( '"' );
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * draws the rank of a word. The rank is the vocabulary raised to a
+     * uniform exponent, which gives each word a frequency close to the
+     * inverse of its rank, and most words are drawn from the ones that lean
+     * to the example's class
+     * @param positive indicates if the example is positive
+     * @return the rank of the word
+     */
+    private int nextRank( boolean positive ) {
+        boolean biased = random.nextDouble() < CLASS_BIAS;
+        while( true ) {
+            int rank = ( int ) Math.pow( vocabulary, random.nextDouble() ) - 1;
+            if( !biased || isPositiveWord( rank ) == positive ) {
+                return rank;
+            }
+        }
+    }
+
+    /**
+     * writes a training file
+     * @param args the file's path, the number of examples, the number of
+     * words of each example, the vocabulary and the seed
+     */
+    public static void main( String[] args ) throws IOException {
+        if( args.length != 5 ) {
+            System.out.println( "Usage: java SyntheticCorpus path examples " +
+                "words vocabulary seed" );
+            System.exit( 1 );
+        }
+        new SyntheticCorpus( Integer.parseInt( args[ 3 ] ),
+            Long.parseLong( args[ 4 ] ) ).writeTrainingFile( args[ 0 ],
+            Integer.parseInt( args[ 1 ] ), Integer.parseInt( args[ 2 ] ) );
+    }
+}
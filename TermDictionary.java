@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.Arrays;
+
+/**
+ * open addressing dictionary that maps each term to a dense int id, so the
+ * information of the terms can be kept on primitive arrays indexed by the id
+ * @author vitorcezar
+ */
+public class TermDictionary implements TermIndex {
+
+    /**
+     * value returned when a term isn't on the dictionary
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * initial number of slots, it must be a power of two
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * the table is doubled when it's filled above this fraction
+     */
+    private static final double LOAD_FACTOR = 0.5;
+
+    /**
+     * bytes taken by a string besides its characters, with compressed
+     * references
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    /**
+     * hash table whose slots keep the term id plus one, zero is an empty slot
+     */
+    private int[] slots;
+
+    /**
+     * the terms indexed by their ids
+     */
+    private String[] terms;
+
+    /**
+     * the hashes of the terms indexed by their ids
+     */
+    private int[] hashes;
+
+    /**
+     * number of terms on the dictionary
+     */
+    private int size;
+
+    /**
+     * number of characters of the terms
+     */
+    private long characters;
+
+    /**
+     * the dictionary must be empty initially
+     */
+    public TermDictionary() {
+        this( 0 );
+    }
+
+    /**
+     * creates an empty dictionary that can take a number of terms without
+     * being rebuilt
+     * @param expectedTerms the number of terms expected
+     */
+    public TermDictionary( int expectedTerms ) {
+        int capacity = INITIAL_CAPACITY;
+        while( capacity * LOAD_FACTOR < expectedTerms ) {
+            capacity *= 2;
+        }
+        slots = new int[ capacity ];
+        terms = new String[ capacity / 2 ];
+        hashes = new int[ capacity / 2 ];
+        size = 0;
+    }
+
+    /**
+     * returns the number of terms on the dictionary
+     * @return the number of terms on the dictionary
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * the terms are always kept
+     * @return true
+     */
+    @Override
+    public boolean keepsTerms() {
+        return true;
+    }
+
+    /**
+     * returns the term that has the id
+     * @param id the term's id
+     * @return the term that has the id
+     */
+    @Override
+    public String term( int id ) {
+        return terms[ id ];
+    }
+
+    /**
+     * returns an estimate of the bytes taken by the dictionary, counting
+     * each character as a byte as the compact strings keep them
+     * @return the bytes taken by the dictionary
+     */
+    @Override
+    public long estimatedBytes() {
+        return 4L * ( slots.length + hashes.length + terms.length ) +
+            ( long ) STRING_OVERHEAD * size + characters;
+    }
+
+    /**
+     * returns the id of a term
+     * @param term term that is being searched
+     * @return the term's id or NOT_FOUND if it isn't on the dictionary
+     */
+    @Override
+    public int find( String term ) {
+        int hash = hash( term );
+        int mask = slots.length - 1;
+        for( int slot = hash & mask; ; slot = ( slot + 1 ) & mask ) {
+            int id = slots[ slot ] - 1;
+            if( id < 0 ) {
+                return NOT_FOUND;
+            }
+            if( hashes[ id ] == hash && terms[ id ].equals( term ) ) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * returns the id of a term kept on a buffer, without creating a string
+     * @param chars the buffer with the term's characters
+     * @param offset position of the term on the buffer
+     * @param length number of characters of the term
+     * @param hash the term's hash
+     * @return the term's id or NOT_FOUND if it isn't on the dictionary
+     */
+    @Override
+    public int find( char[] chars, int offset, int length, int hash ) {
+        int mask = slots.length - 1;
+        for( int slot = hash & mask; ; slot = ( slot + 1 ) & mask ) {
+            int id = slots[ slot ] - 1;
+            if( id < 0 ) {
+                return NOT_FOUND;
+            }
+            if( hashes[ id ] == hash && matches( terms[ id ], chars, offset, length ) ) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * returns the id of a term, adding it to the dictionary if it's new
+     * @param term term that is being searched
+     * @return the term's id
+     */
+    @Override
+    public int add( String term ) {
+        int hash = hash( term );
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        for( ; ; slot = ( slot + 1 ) & mask ) {
+            int id = slots[ slot ] - 1;
+            if( id < 0 ) {
+                break;
+            }
+            if( hashes[ id ] == hash && terms[ id ].equals( term ) ) {
+                return id;
+            }
+        }
+        return insert( term, hash, slot );
+    }
+
+    /**
+     * adds a new term to the dictionary
+     * @param term the new term
+     * @param hash the term's hash
+     * @param slot the empty slot found for the term
+     * @return the term's id
+     */
+    private int insert( String term, int hash, int slot ) {
+        int id = size++;
+        if( id == terms.length ) {
+            terms = Arrays.copyOf( terms, terms.length * 2 );
+            hashes = Arrays.copyOf( hashes, hashes.length * 2 );
+        }
+        terms[ id ] = term;
+        hashes[ id ] = hash;
+        characters += term.length();
+        slots[ slot ] = id + 1;
+        if( size > slots.length * LOAD_FACTOR ) {
+            rehash( slots.length * 2 );
+        }
+        return id;
+    }
+
+    /**
+     * returns the id of a term kept on a buffer, adding it to the dictionary
+     * if it's new. A string is only created for the new terms
+     * @param chars the buffer with the term's characters
+     * @param offset position of the term on the buffer
+     * @param length number of characters of the term
+     * @param hash the term's hash
+     * @return the term's id
+     */
+    @Override
+    public int add( char[] chars, int offset, int length, int hash ) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        for( ; ; slot = ( slot + 1 ) & mask ) {
+            int id = slots[ slot ] - 1;
+            if( id < 0 ) {
+                break;
+            }
+            if( hashes[ id ] == hash && matches( terms[ id ], chars, offset, length ) ) {
+                return id;
+            }
+        }
+        return insert( new String( chars, offset, length ), hash, slot );
+    }
+
+    /**
+     * rebuilds the hash table with a new number of slots
+     * @param capacity the new number of slots
+     */
+    private void rehash( int capacity ) {
+        int[] newSlots = new int[ capacity ];
+        int mask = capacity - 1;
+        for( int id = 0; id < size; id++ ) {
+            int slot = hashes[ id ] & mask;
+            while( newSlots[ slot ] != 0 ) {
+                slot = ( slot + 1 ) & mask;
+            }
+            newSlots[ slot ] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * indicates if a term has the characters of a buffer
+     * @param term the term
+     * @param chars the buffer
+     * @param offset position of the characters on the buffer
+     * @param length number of characters
+     * @return true if the term has the buffer's characters
+     */
+    private static boolean matches( String term, char[] chars, int offset,
+        int length ) {
+        if( term.length() != length ) {
+            return false;
+        }
+        for( int i = 0; i < length; i++ ) {
+            if( term.charAt( i ) != chars[ offset + i ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns the hash of a term
+     * @param term the term
+     * @return the term's hash
+     */
+    static int hash( String term ) {
+        return mix( term.hashCode() );
+    }
+
+    /**
+     * spreads the bits of a term's hash code, because the slot is taken from
+     * the lowest bits. The hash code must be computed as String.hashCode
+     * does, so the tokenizers can compute it while they read the characters
+     * @param hashCode the term's hash code
+     * @return the term's hash
+     */
+    static int mix( int hashCode ) {
+        int hash = hashCode * 0x9E3779B9;
+        return hash ^ ( hash >>> 16 );
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * maps each term to a dense int id, so the information of the terms can be
+ * kept on primitive arrays indexed by the id
+ * @author vitorcezar
+ */
+public interface TermIndex {
+
+    /**
+     * returns the number of ids in use
+     * @return the number of ids in use
+     */
+    int size();
+
+    /**
+     * indicates if the terms are kept, so they can be taken from their ids
+     * @return true if term returns the terms
+     */
+    boolean keepsTerms();
+
+    /**
+     * returns the term that has the id
+     * @param id the term's id
+     * @return the term that has the id, or null if the terms aren't kept
+     */
+    String term( int id );
+
+    /**
+     * returns the id of a term
+     * @param term term that is being searched
+     * @return the term's id or TermDictionary.NOT_FOUND if it's unknown
+     */
+    int find( String term );
+
+    /**
+     * returns an estimate of the bytes taken by the index
+     * @return the bytes taken by the index
+     */
+    long estimatedBytes();
+
+    /**
+     * returns the id of a term kept on a buffer, without creating a string
+     * @param chars the buffer with the term's characters
+     * @param offset position of the term on the buffer
+     * @param length number of characters of the term
+     * @param hash the term's hash, as TermDictionary.hash computes it
+     * @return the term's id or TermDictionary.NOT_FOUND if it's unknown
+     */
+    int find( char[] chars, int offset, int length, int hash );
+
+    /**
+     * returns the id of a term, adding it if it's new
+     * @param term term that is being searched
+     * @return the term's id
+     */
+    int add( String term );
+
+    /**
+     * returns the id of a term kept on a buffer, adding it if it's new
+     * @param chars the buffer with the term's characters
+     * @param offset position of the term on the buffer
+     * @param length number of characters of the term
+     * @param hash the term's hash, as TermDictionary.hash computes it
+     * @return the term's id
+     */
+    int add( char[] chars, int offset, int length, int hash );
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * a model that classifies texts as positive or negative. Implementations
+ * must allow many threads to evaluate texts at the same time
+ * @author vitorcezar
+ */
+public interface TextClassifier {
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @return the text's classification and chances
+     */
+    ClassificationResult evaluate( String text );
+
+    /**
+     * returns the text's classification and chances
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words, it must
+     * be the one used on the training
+     * @return the text's classification and chances
+     */
+    ClassificationResult evaluate( CharSequence text, Tokenizer tokenizer );
+
+    /**
+     * returns the text's classification, which may be decided before every
+     * word is scored when the remaining words can't change it. The chances
+     * are only calibrated if the result didn't exit early, so evaluate must
+     * be used when they are needed. The models without bounds of the
+     * contribution of a word score every word
+     * @param text text that will be evaluated
+     * @param tokenizer the tokenizer that splits the text into words, it must
+     * be the one used on the training
+     * @return the text's classification
+     */
+    default ClassificationResult decide( CharSequence text,
+        Tokenizer tokenizer ) {
+        return evaluate( text, tokenizer );
+    }
+
+    /**
+     * returns the tokenizer of the current thread that splits the texts as
+     * the model was trained
+     * @return the tokenizer of the model for the current thread
+     */
+    default Tokenizer tokenizer() {
+        return WordTokenizer.local();
+    }
+
+    /**
+     * returns a number that changes whenever further training may change
+     * the classifications, so the results kept by a cache can be dropped.
+     * The models that can't be trained always return the same number
+     * @return the version of the model
+     */
+    default long version() {
+        return 0;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * a line of a training or classification file
+ * @author vitorcezar
+ */
+public final class TextRecord {
+
+    /**
+     * label of the records that don't have one
+     */
+    public static final int NO_LABEL = -1;
+
+    /**
+     * the number of the record's line
+     */
+    private final int line;
+
+    /**
+     * the record's target, or NO_LABEL
+     */
+    private final int label;
+
+    /**
+     * the text between the quotes
+     */
+    private final String text;
+
+    /**
+     * class constructor
+     * @param line the number of the record's line
+     * @param label the record's target, or NO_LABEL
+     * @param text the text between the quotes
+     */
+    public TextRecord( int line, int label, String text ) {
+        this.line = line;
+        this.label = label;
+        this.text = text;
+    }
+
+    /**
+     * returns the number of the record's line
+     * @return the number of the record's line
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * returns the record's target
+     * @return the record's target, or NO_LABEL if it doesn't have one
+     */
+    public int getLabel() {
+        return label;
+    }
+
+    /**
+     * returns the text between the quotes
+     * @return the text between the quotes
+     */
+    public String getText() {
+        return text;
+    }
+}
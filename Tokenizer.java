@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+/**
+ * splits a text into tokens without allocating an object for each of them.
+ * The whole text is tokenized at once and the tokens are kept as positions on
+ * a normalized copy of the text, so the lookups of the tokens can run one
+ * after the other. A tokenizer reuses its buffers between texts, so it must
+ * not be shared between threads
+ * @author vitorcezar
+ */
+public interface Tokenizer {
+
+    /**
+     * splits a text into tokens, which are valid until the next call
+     * @param text the text that will be tokenized
+     * @return the number of tokens of the text
+     */
+    int tokenize( CharSequence text );
+
+    /**
+     * returns the normalized text, where the tokens are kept
+     * @return the normalized text
+     */
+    char[] text();
+
+    /**
+     * returns the position of a token on the normalized text
+     * @param token the token's index
+     * @return the position of the token's first character
+     */
+    int start( int token );
+
+    /**
+     * returns the number of characters of a token
+     * @param token the token's index
+     * @return the number of characters of the token
+     */
+    int length( int token );
+
+    /**
+     * returns the hash of a token, which must be the one that
+     * TermDictionary.hash gives for the token as a string
+     * @param token the token's index
+     * @return the hash of the token
+     */
+    int hash( int token );
+}
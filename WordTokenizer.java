@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 vitorcezar
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+import java.util.Arrays;
+
+/**
+ * tokenizer that splits a text into lowercased words. A word is a run of
+ * letters, digits and apostrophes, so runs of whitespace and punctuation
+ * only separate words. The text is normalized in place: the words are
+ * lowercased and moved to the beginning of the buffer, separated by a single
+ * space, and they are hashed while they are moved
+ * @author vitorcezar
+ */
+public class WordTokenizer implements Tokenizer {
+
+    /**
+     * the tokenizer of each thread
+     */
+    private static final ThreadLocal< WordTokenizer > LOCAL =
+        ThreadLocal.withInitial( WordTokenizer::new );
+
+    /**
+     * indicates which ASCII characters are part of a word
+     */
+    private static final boolean[] ASCII_WORD_CHARACTERS =
+        asciiWordCharacters();
+
+    /**
+     * initial length of the buffers
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * the normalized text, the array is reused between texts
+     */
+    private char[] text;
+
+    /**
+     * the position of each token on the normalized text
+     */
+    private int[] starts;
+
+    /**
+     * the number of characters of each token
+     */
+    private int[] lengths;
+
+    /**
+     * the hash of each token
+     */
+    private int[] hashes;
+
+    /**
+     * class constructor
+     */
+    public WordTokenizer() {
+        text = new char[ INITIAL_CAPACITY ];
+        starts = new int[ INITIAL_CAPACITY ];
+        lengths = new int[ INITIAL_CAPACITY ];
+        hashes = new int[ INITIAL_CAPACITY ];
+    }
+
+    /**
+     * returns the tokenizer of the current thread, it's the one used when no
+     * tokenizer is given for training or classification
+     * @return the tokenizer of the current thread
+     */
+    public static WordTokenizer local() {
+        return LOCAL.get();
+    }
+
+    @Override
+    public int tokenize( CharSequence input ) {
+        int end = input.length();
+        if( end > text.length ) {
+            text = new char[ Math.max( end, text.length * 2 ) ];
+        }
+        if( input instanceof String ) {
+            ( ( String ) input ).getChars( 0, end, text, 0 );
+        } else {
+            for( int i = 0; i < end; i++ ) {
+                text[ i ] = input.charAt( i );
+            }
+        }
+
+        // the words are written over the characters already read
+        char[] text = this.text;
+        int tokens = 0;
+        int written = 0;
+        int position = 0;
+        while( true ) {
+            while( position < end && !isWordCharacter( text[ position ] ) ) {
+                position++;
+            }
+            if( position == end ) {
+                return tokens;
+            }
+            if( tokens > 0 ) {
+                text[ written++ ] = ' ';
+            }
+            if( tokens == starts.length ) {
+                grow();
+            }
+            int start = written;
+            int hashCode = 0;
+            while( position < end && isWordCharacter( text[ position ] ) ) {
+                char character = toLowerCase( text[ position++ ] );
+                text[ written++ ] = character;
+                hashCode = 31 * hashCode + character;
+            }
+            starts[ tokens ] = start;
+            lengths[ tokens ] = written - start;
+            hashes[ tokens ] = TermDictionary.mix( hashCode );
+            tokens++;
+        }
+    }
+
+    @Override
+    public char[] text() {
+        return text;
+    }
+
+    @Override
+    public int start( int token ) {
+        return starts[ token ];
+    }
+
+    @Override
+    public int length( int token ) {
+        return lengths[ token ];
+    }
+
+    @Override
+    public int hash( int token ) {
+        return hashes[ token ];
+    }
+
+    /**
+     * doubles the arrays of the tokens
+     */
+    private void grow() {
+        int length = starts.length * 2;
+        starts = Arrays.copyOf( starts, length );
+        lengths = Arrays.copyOf( lengths, length );
+        hashes = Arrays.copyOf( hashes, length );
+    }
+
+    /**
+     * indicates if a character is part of a word. Surrogates are, so the
+     * characters outside the basic plane aren't split
+     * @param character the character
+     * @return true if the character is part of a word
+     */
+    private static boolean isWordCharacter( char character ) {
+        if( character < ASCII_WORD_CHARACTERS.length ) {
+            return ASCII_WORD_CHARACTERS[ character ];
+        }
+        return Character.isLetterOrDigit( character ) ||
+            Character.isSurrogate( character );
+    }
+
+    /**
+     * lowercases a character, ASCII characters without a table lookup
+     * @param character the character
+     * @return the lowercased character
+     */
+    private static char toLowerCase( char character ) {
+        if( character < ASCII_WORD_CHARACTERS.length ) {
+            if( character >= 'A' && character <= 'Z' ) {
+                return ( char ) ( character + ( 'a' - 'A' ) );
+            }
+            return character;
+        }
+        return Character.toLowerCase( character );
+    }
+
+    /**
+     * indicates which ASCII characters are part of a word
+     * @return a table indexed by the ASCII characters
+     */
+    private static boolean[] asciiWordCharacters() {
+        boolean[] table = new boolean[ 128 ];
+        for( char character = 0; character < table.length; character++ ) {
+            table[ character ] = Character.isLetterOrDigit( character ) ||
+                character == '\'';
+        }
+        return table;
+    }
+}